@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+/**
+ * Immutable coordinates of an artifact: groupId, artifactId, type, version and classifier.
+ *
+ * The coordinates compare like the dependencies (see Dependency.equals()): the jar and bundle
+ * types are equivalent, and a missing classifier is the empty classifier. The hash code is
+ * computed once, which makes the coordinates cheap keys for the maps of the repository.
+ */
+public final class Coordinate {
+
+    private final String groupId;
+    private final String artifactId;
+    private final String type;
+    private final String version;
+    private final String classifier;
+    private final int hash;
+
+    public Coordinate(String groupId, String artifactId, String type, String version, String classifier) {
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.type = type;
+        this.version = version;
+        this.classifier = (classifier == null) ? "" : classifier;
+
+        int hash = 7;
+        hash = 31 * hash + (groupId != null ? groupId.hashCode() : 0);
+        hash = 31 * hash + (artifactId != null ? artifactId.hashCode() : 0);
+        hash = 31 * hash + (type != null ? typeFamily(type).hashCode() : 0);
+        hash = 31 * hash + (version != null ? version.hashCode() : 0);
+        hash = 31 * hash + this.classifier.hashCode();
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the type used to compare the types, bundle is the same as jar.
+     */
+    private static String typeFamily(String type) {
+        return "bundle".equals(type) ? "jar" : type;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final Coordinate other = (Coordinate) obj;
+        return hash == other.hash
+                && (groupId == null ? other.groupId == null : groupId.equals(other.groupId))
+                && (artifactId == null ? other.artifactId == null : artifactId.equals(other.artifactId))
+                && Dependency.isTypeEquals(type, other.type)
+                && (version == null ? other.version == null : version.equals(other.version))
+                && classifier.equals(other.classifier);
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public String toString() {
+        return groupId + ":" + artifactId + ":" + type + ":" + version;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Resident server running the Java tools of maven-repo-helper in a warm JVM.
+ *
+ * The mh_* scripts send their requests to the daemon when it is running
+ * (see runjava in mh_lib.sh) and start a new JVM otherwise.
+ *
+ * The daemon listens on a port of the loopback interface. The port and a random token
+ * are written in the state file, only readable by its owner, and a client must send
+ * the token with each request.
+ *
+ * A request is made of the following lines:
+ * <pre>
+ * token
+ * run
+ * working directory of the client
+ * main class
+ * number of arguments
+ * argument 1
+ * ...
+ * </pre>
+ * The daemon sends back the output and the log of the command, followed by the line
+ * <tt>MH_DAEMON_EXIT:&lt;status></tt>. The status is 1 if the command failed with
+ * an exception or logged an error. The request <tt>stop</tt> stops the daemon.
+ *
+ * Requests are processed one at a time, as the tools write to System.out. The cache of
+ * the poms read is cleared before each request, as the poms may have been modified since
+ * within the resolution of their modification time.
+ */
+public class Daemon {
+
+    private static final Logger log = Logger.getLogger(Daemon.class.getName());
+
+    public static final String EXIT_MARKER = "MH_DAEMON_EXIT:";
+
+    /** Long options of the tools expecting a file */
+    private static final List<String> FILE_OPTIONS = Arrays.asList("rules", "published-rules", "ignore-rules",
+            "clean-ignore-rules", "maven-repo", "maven-repo-index", "poms", "repository", "manifest");
+    /** Short options of the tools expecting a file, by main class */
+    private static final Map<String, List<String>> SHORT_FILE_OPTIONS = new HashMap<String, List<String>>();
+
+    static {
+        SHORT_FILE_OPTIONS.put(POMCleaner.class.getName(), Arrays.asList("r", "u", "i", "m"));
+        SHORT_FILE_OPTIONS.put(POMTransformer.class.getName(), Arrays.asList("r", "u", "i", "m"));
+        // -i is the artifact given to --impact in mh_checkrepo
+        SHORT_FILE_OPTIONS.put(Repository.class.getName(), Arrays.asList("r", "m"));
+    }
+
+    private final File stateFile;
+    private final String token;
+    private ServerSocket serverSocket;
+    private int idleTimeout = 0;
+    private boolean verbose = false;
+
+    public Daemon(File stateFile) {
+        this.stateFile = stateFile;
+        this.token = new BigInteger(130, new SecureRandom()).toString(32);
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the daemon after this number of seconds without requests, 0 to never stop.
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Opens the server socket and writes the state file used by the clients.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        serverSocket.setSoTimeout(idleTimeout * 1000);
+
+        if (stateFile.getParentFile() != null) {
+            stateFile.getParentFile().mkdirs();
+        }
+        stateFile.delete();
+        stateFile.createNewFile();
+        stateFile.setReadable(false, false);
+        stateFile.setWritable(false, false);
+        stateFile.setReadable(true, true);
+        stateFile.setWritable(true, true);
+        PrintWriter out = new PrintWriter(new FileWriter(stateFile));
+        out.println(getPort() + " " + token);
+        out.close();
+
+        if (verbose) {
+            System.out.println("mh_daemon listening on port " + getPort() + ", state file " + stateFile);
+        }
+    }
+
+    /**
+     * Serves the requests until the daemon is stopped or stays idle for too long.
+     */
+    public void serve() {
+        try {
+            boolean running = true;
+            while (running) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    if (verbose) {
+                        System.out.println("mh_daemon idle for " + idleTimeout + " seconds, stopping");
+                    }
+                    break;
+                }
+                try {
+                    running = handle(socket);
+                } catch (Exception e) {
+                    // Malformed request or client gone, keep serving the other clients
+                    log.log(Level.SEVERE, "Error while processing a request", e);
+                } finally {
+                    socket.close();
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.SEVERE, null, e);
+        } finally {
+            stop();
+        }
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, null, e);
+        }
+        stateFile.delete();
+    }
+
+    /**
+     * Processes one request.
+     *
+     * @return false if the daemon must stop
+     */
+    private boolean handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        OutputStream out = socket.getOutputStream();
+        PrintStream output = new PrintStream(out, true, "UTF-8");
+
+        if (!token.equals(in.readLine())) {
+            output.println("Invalid token");
+            output.println(EXIT_MARKER + 1);
+            return true;
+        }
+        String command = in.readLine();
+        if ("stop".equals(command)) {
+            output.println(EXIT_MARKER + 0);
+            return false;
+        }
+        if (!"run".equals(command)) {
+            output.println("Unknown command " + command);
+            output.println(EXIT_MARKER + 1);
+            return true;
+        }
+
+        File workingDir = new File(in.readLine());
+        String mainClass = in.readLine();
+        int count = Integer.parseInt(in.readLine().trim());
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = in.readLine();
+        }
+        args = resolveArguments(mainClass, args, workingDir);
+
+        if (verbose) {
+            System.out.println("mh_daemon: " + mainClass + " " + Arrays.asList(args));
+        }
+
+        int status = run(mainClass, args, output);
+        output.println(EXIT_MARKER + status);
+        return true;
+    }
+
+    /**
+     * Runs the tool with its output and its log sent to the client.
+     *
+     * @return the exit status of the tool, 1 if it failed with an exception or logged an error
+     */
+    private int run(String mainClass, String[] args, PrintStream output) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        Logger rootLogger = Logger.getLogger("");
+        Handler[] handlers = rootLogger.getHandlers();
+        ClientLogHandler logHandler = new ClientLogHandler(output);
+        for (Handler handler : handlers) {
+            rootLogger.removeHandler(handler);
+        }
+        rootLogger.addHandler(logHandler);
+        System.setOut(output);
+        System.setErr(output);
+        POMReader.getCache().clear();
+        try {
+            int status = 0;
+            if (POMCleaner.class.getName().equals(mainClass)) {
+                POMCleaner.main(args);
+            } else if (POMTransformer.class.getName().equals(mainClass)) {
+                POMTransformer.main(args);
+            } else if (Repository.class.getName().equals(mainClass)) {
+                status = Repository.run(args);
+            } else {
+                output.println("Unsupported main class " + mainClass);
+                return 1;
+            }
+            if (status == 0 && logHandler.isFailed()) {
+                status = 1;
+            }
+            return status;
+        } catch (Throwable e) {
+            e.printStackTrace(output);
+            return 1;
+        } finally {
+            output.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            rootLogger.removeHandler(logHandler);
+            for (Handler handler : handlers) {
+                rootLogger.addHandler(handler);
+            }
+        }
+    }
+
+    /**
+     * Sends the log records of a tool to the client, like the console handler of a new JVM would.
+     */
+    private static class ClientLogHandler extends Handler {
+        private final PrintStream output;
+        private boolean failed;
+
+        private ClientLogHandler(PrintStream output) {
+            this.output = output;
+            setLevel(Level.INFO);
+            setFormatter(new SimpleFormatter());
+        }
+
+        /**
+         * Tells if an error was logged.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public void publish(LogRecord record) {
+            if (!isLoggable(record)) {
+                return;
+            }
+            if (record.getLevel().intValue() >= Level.SEVERE.intValue()) {
+                failed = true;
+            }
+            output.print(getFormatter().format(record));
+        }
+
+        public void flush() {
+            output.flush();
+        }
+
+        public void close() {
+            flush();
+        }
+    }
+
+    /**
+     * Resolves the files given in the arguments of the tools against the working directory
+     * of the client, as the daemon runs in its own directory.
+     */
+    static String[] resolveArguments(String mainClass, String[] args, File workingDir) {
+        List<String> shortFileOptions = SHORT_FILE_OPTIONS.get(mainClass);
+        if (shortFileOptions == null) {
+            shortFileOptions = Collections.emptyList();
+        }
+        List<String> resolved = new ArrayList<String>();
+        for (String arg : args) {
+            String trimmed = arg.trim();
+            if (trimmed.length() == 0) {
+                resolved.add(arg);
+            } else if (trimmed.startsWith("--")) {
+                int equalsPosition = trimmed.indexOf('=');
+                if (equalsPosition > 0 && FILE_OPTIONS.contains(trimmed.substring(2, equalsPosition))) {
+                    resolved.add(trimmed.substring(0, equalsPosition + 1)
+                            + resolveFile(trimmed.substring(equalsPosition + 1), workingDir));
+                } else {
+                    resolved.add(arg);
+                }
+            } else if (trimmed.startsWith("-")) {
+                if (trimmed.length() > 2 && shortFileOptions.contains(trimmed.substring(1, 2))) {
+                    resolved.add(trimmed.substring(0, 2) + resolveFile(trimmed.substring(2), workingDir));
+                } else {
+                    resolved.add(arg);
+                }
+            } else {
+                resolved.add(resolveFile(trimmed, workingDir));
+            }
+        }
+        return resolved.toArray(new String[resolved.size()]);
+    }
+
+    private static String resolveFile(String path, File workingDir) {
+        File file = new File(path);
+        if (file.isAbsolute()) {
+            return path;
+        }
+        return new File(workingDir, path).getPath();
+    }
+
+    /**
+     * Sends a stop request to the daemon described by the state file.
+     */
+    public static boolean stop(File stateFile) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(stateFile));
+            String[] state = reader.readLine().trim().split(" ");
+            reader.close();
+            Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(state[0]));
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+            out.println(state[1]);
+            out.println("stop");
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String line = in.readLine();
+            socket.close();
+            return line != null && line.equals(EXIT_MARKER + 0);
+        } catch (Exception e) {
+            System.err.println("Cannot stop the daemon: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 0 && ("-h".equals(args[0]) || "--help".equals(args[0]))) {
+            System.out.println("Purpose: runs the Java tools of maven-repo-helper in a resident JVM");
+            System.out.println("Usage: [option]");
+            System.out.println("");
+            System.out.println("Options:");
+            System.out.println("  -v, --verbose: be extra verbose");
+            System.out.println("  --state-file=<file>: file where the port and the token used by the clients");
+            System.out.println("    are written. Default to ~/.mh_daemon");
+            System.out.println("  --idle-timeout=<seconds>: stop the daemon after this number of seconds");
+            System.out.println("    without requests. Default to 0, never stop");
+            System.out.println("  --stop: stop the running daemon");
+            return;
+        }
+
+        boolean verbose = false;
+        boolean stop = false;
+        int idleTimeout = 0;
+        File stateFile = new File(System.getProperty("user.home"), ".mh_daemon");
+        for (String arg : args) {
+            arg = arg.trim();
+            if ("--verbose".equals(arg) || "-v".equals(arg)) {
+                verbose = true;
+            } else if ("--stop".equals(arg)) {
+                stop = true;
+            } else if (arg.startsWith("--state-file=")) {
+                stateFile = new File(arg.substring("--state-file=".length()));
+            } else if (arg.startsWith("--idle-timeout=")) {
+                idleTimeout = Integer.parseInt(arg.substring("--idle-timeout=".length()));
+            }
+        }
+
+        if (stop) {
+            if (!stop(stateFile)) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        Daemon daemon = new Daemon(stateFile);
+        daemon.setVerbose(verbose);
+        daemon.setIdleTimeout(idleTimeout);
+        try {
+            daemon.start();
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Cannot start the daemon", e);
+            System.exit(1);
+        }
+        daemon.serve();
+    }
+}
@@ -47,6 +47,8 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     private String relativePath;
     private boolean superPom;
     private String systemPath;
+    /** The coordinates of this dependency, reset by the setters */
+    private Coordinate coordinate;
 
     public Dependency(String groupId, String artifactId, String type, String version) {
         this.groupId = groupId;
@@ -90,6 +92,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
         this.optional = builder.optional;
         this.classifier = builder.classifier;
         this.relativePath = builder.relativePath;
+        this.systemPath = builder.systemPath;
         this.superPom = builder.superPom;
     }
 
@@ -100,6 +103,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     @Deprecated
     public void setArtifactId(String artifactId) {
         this.artifactId = artifactId;
+        this.coordinate = null;
     }
 
     public String getGroupId() {
@@ -109,6 +113,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     @Deprecated
     public void setGroupId(String groupId) {
         this.groupId = groupId;
+        this.coordinate = null;
     }
 
     public String getType() {
@@ -118,6 +123,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     @Deprecated
     public void setType(String type) {
         this.type = type;
+        this.coordinate = null;
     }
 
     public String getVersion() {
@@ -127,6 +133,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     @Deprecated
     public void setVersion(String version) {
         this.version = version;
+        this.coordinate = null;
     }
 
     public boolean isOptional() {
@@ -158,6 +165,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     @Deprecated
     public void setClassifier(String classifier) {
         this.classifier = (classifier == null) ? "" : classifier;
+        this.coordinate = null;
     }
     
     public String getRelativePath() {
@@ -216,6 +224,9 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     }
 
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj == null) {
             return false;
         }
@@ -240,6 +251,9 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     }
 
     public boolean equalsIgnoreVersion(Dependency other) {
+        if (this == other) {
+            return true;
+        }
         if (other == null) {
             return false;
         }
@@ -260,12 +274,19 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
     }
 
     public int hashCode() {
-        int hash = 7;
-        hash = 31 * hash + (this.groupId != null ? this.groupId.hashCode() : 0);
-        hash = 31 * hash + (this.artifactId != null ? this.artifactId.hashCode() : 0);
-        // ignore type
-        hash = 31 * hash + (this.version != null ? this.version.hashCode() : 0);
-        return hash;
+        return getCoordinate().hashCode();
+    }
+
+    /**
+     * Returns the immutable coordinates of this dependency, to use as the key of a map.
+     */
+    public Coordinate getCoordinate() {
+        Coordinate coordinate = this.coordinate;
+        if (coordinate == null) {
+            coordinate = new Coordinate(groupId, artifactId, type, version, classifier);
+            this.coordinate = coordinate;
+        }
+        return coordinate;
     }
 
     public String toString() {
@@ -304,16 +325,22 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
         }
     }
 
+    /**
+     * Applies the first matching rule to this dependency. This dependency is returned
+     * when no rule matches or when the rule doesn't change it.
+     */
     public Dependency applyRules(Collection<DependencyRule> rules) {
-        for (DependencyRule rule: rules) {
-            if (rule.matches(this)) {
-                return rule.apply(this);
-            }
+        DependencyRule rule = findMatchingRule(rules);
+        if (rule != null) {
+            return rule.apply(this);
         }
-        return new Dependency(this);
+        return this;
     }
 
     public DependencyRule findMatchingRule(Collection<DependencyRule> rules) {
+        if (rules instanceof IndexedRuleSet) {
+            return ((IndexedRuleSet) rules).findMatchingRule(this);
+        }
         for (DependencyRule rule: rules) {
             if (rule.matches(this)) {
                 return rule;
@@ -340,7 +367,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
         List<Dependency> result = new ArrayList<Dependency>();
         for (Dependency dependency: dependencies) {
             if (dependency.findMatchingRule(ignoreRules) == null) {
-                result.add(new Dependency(dependency));
+                result.add(dependency);
             }
         }
         return result;
@@ -392,6 +419,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
         private String scope;
         private String classifier;
         private String relativePath;
+        private String systemPath;
         private boolean superPom;
 
         public Builder setGroupId(String groupId) { this.groupId = groupId; return this; }
@@ -402,6 +430,7 @@ public class Dependency implements Comparable<Dependency>, Cloneable {
         public Builder setScope(String scope) { this.scope = scope; return this; }
         public Builder setClassifier(String classifier) { this.classifier = classifier; return this; }
         public Builder setRelativePath(String relativePath) { this.relativePath = relativePath; return this; }
+        public Builder setSystemPath(String systemPath) { this.systemPath = systemPath; return this; }
         public Builder setSuperPom(boolean superPom) { this.superPom = superPom; return this; }
 
         public Builder set(Field field, String value) {
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.debian.maven.repo.POMInfo.DependencyType;
+
+/**
+ * Graph of the dependencies between the artifacts of a repository.
+ *
+ * Each artifact has an id, from 0 to size() - 1. The artifacts of the repository come first,
+ * followed by the dependencies which are not packaged in the repository. A pom depends on
+ * its parent, its dependencies, its plugins and their dependencies, and its extensions.
+ *
+ * The edges are stored in compressed rows: the targets of the edges of the artifact with the
+ * id n are the elements from offsets[n] to offsets[n + 1] of the targets array, in both
+ * directions. The graph is not updated when the repository changes.
+ */
+public class DependencyGraph {
+
+    /** The types of dependencies linking the poms of the graph */
+    private static final DependencyType[] EDGE_TYPES = {
+            DependencyType.DEPENDENCIES, DependencyType.PLUGINS,
+            DependencyType.PLUGIN_DEPENDENCIES, DependencyType.EXTENSIONS };
+
+    private final Coordinate[] coordinates;
+    private final Map<Coordinate, Integer> ids;
+    private final int packagedCount;
+
+    private final int[] forwardOffsets;
+    private final int[] forwardTargets;
+    private final int[] reverseOffsets;
+    private final int[] reverseTargets;
+
+    /**
+     * Builds the graph of the poms, indexed by the coordinates of the artifacts they describe.
+     */
+    DependencyGraph(Map<Coordinate, POMInfo> poms) {
+        packagedCount = poms.size();
+        ids = new HashMap<Coordinate, Integer>(poms.size() * 2);
+        List<Coordinate> nodes = new ArrayList<Coordinate>(poms.keySet());
+        for (int id = 0; id < nodes.size(); id++) {
+            ids.put(nodes.get(id), id);
+        }
+
+        // The edges are added artifact by artifact, so the forward rows are filled in order
+        int[] offsets = new int[packagedCount + 1];
+        int[] targets = new int[Math.max(16, packagedCount * 4)];
+        int edgeCount = 0;
+        int[] lastSource = new int[packagedCount];
+        Arrays.fill(lastSource, -1);
+        for (int id = 0; id < packagedCount; id++) {
+            offsets[id] = edgeCount;
+            POMInfo pom = poms.get(nodes.get(id));
+            List<Dependency> dependencies = new ArrayList<Dependency>();
+            if (pom.getParent() != null && !pom.getParent().isSuperPom()) {
+                dependencies.add(pom.getParent());
+            }
+            for (DependencyType depType : EDGE_TYPES) {
+                dependencies.addAll(pom.getDependencies().get(depType));
+            }
+            for (Dependency dependency : dependencies) {
+                Coordinate coordinate = dependency.getCoordinate();
+                Integer target = ids.get(coordinate);
+                if (target == null) {
+                    target = nodes.size();
+                    ids.put(coordinate, target);
+                    nodes.add(coordinate);
+                    lastSource = grow(lastSource, nodes.size());
+                    lastSource[target] = -1;
+                }
+                // Ignore the self references and the duplicate edges
+                if (target == id || lastSource[target] == id) {
+                    continue;
+                }
+                lastSource[target] = id;
+                targets = grow(targets, edgeCount + 1);
+                targets[edgeCount++] = target;
+            }
+        }
+        offsets[packagedCount] = edgeCount;
+        coordinates = nodes.toArray(new Coordinate[nodes.size()]);
+        forwardTargets = Arrays.copyOf(targets, edgeCount);
+
+        // The missing artifacts have no dependencies: their rows are empty
+        forwardOffsets = Arrays.copyOf(offsets, coordinates.length + 1);
+        Arrays.fill(forwardOffsets, packagedCount + 1, forwardOffsets.length, edgeCount);
+
+        reverseOffsets = new int[coordinates.length + 1];
+        for (int target : forwardTargets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int id = 0; id < coordinates.length; id++) {
+            reverseOffsets[id + 1] += reverseOffsets[id];
+        }
+        reverseTargets = new int[edgeCount];
+        int[] next = Arrays.copyOf(reverseOffsets, coordinates.length);
+        for (int id = 0; id < packagedCount; id++) {
+            for (int edge = forwardOffsets[id]; edge < forwardOffsets[id + 1]; edge++) {
+                reverseTargets[next[forwardTargets[edge]]++] = id;
+            }
+        }
+    }
+
+    private static int[] grow(int[] array, int minLength) {
+        if (array.length >= minLength) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(minLength, array.length * 2));
+    }
+
+    /**
+     * Returns the number of artifacts in the graph, including the missing artifacts.
+     */
+    public int size() {
+        return coordinates.length;
+    }
+
+    /**
+     * Returns the number of edges of the graph.
+     */
+    public int getEdgeCount() {
+        return forwardTargets.length;
+    }
+
+    /**
+     * Returns the id of the artifact, or -1 if the artifact is not in the graph.
+     */
+    public int getId(Dependency dependency) {
+        Integer id = ids.get(dependency.getCoordinate());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the ids of the artifacts with this groupId and artifactId, whatever their version and type.
+     */
+    public BitSet getIds(String groupId, String artifactId) {
+        BitSet result = new BitSet(coordinates.length);
+        for (int id = 0; id < coordinates.length; id++) {
+            if (coordinates[id].getGroupId() != null && coordinates[id].getGroupId().equals(groupId)
+                    && coordinates[id].getArtifactId() != null && coordinates[id].getArtifactId().equals(artifactId)) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    public Coordinate getCoordinate(int id) {
+        return coordinates[id];
+    }
+
+    /**
+     * Returns true if the artifact is packaged in the repository, false if it is only a missing dependency.
+     */
+    public boolean isPackaged(int id) {
+        return id < packagedCount;
+    }
+
+    /**
+     * Returns the ids of the direct dependencies of the artifact.
+     */
+    public int[] getDependencies(int id) {
+        return Arrays.copyOfRange(forwardTargets, forwardOffsets[id], forwardOffsets[id + 1]);
+    }
+
+    /**
+     * Returns the ids of the artifacts depending directly on the artifact.
+     */
+    public int[] getReverseDependencies(int id) {
+        return Arrays.copyOfRange(reverseTargets, reverseOffsets[id], reverseOffsets[id + 1]);
+    }
+
+    /**
+     * Returns the ids of the artifacts needed by the artifact, directly or transitively.
+     */
+    public BitSet getTransitiveDependencies(int id) {
+        BitSet ids = new BitSet(coordinates.length);
+        ids.set(id);
+        return closure(ids, forwardOffsets, forwardTargets);
+    }
+
+    /**
+     * Returns the ids of the artifacts needed by any of the artifacts, directly or transitively.
+     */
+    public BitSet getTransitiveDependencies(BitSet ids) {
+        return closure(ids, forwardOffsets, forwardTargets);
+    }
+
+    /**
+     * Returns the ids of the artifacts depending on the artifact, directly or transitively:
+     * the artifacts broken if the artifact is removed from the repository.
+     */
+    public BitSet getTransitiveReverseDependencies(int id) {
+        BitSet ids = new BitSet(coordinates.length);
+        ids.set(id);
+        return closure(ids, reverseOffsets, reverseTargets);
+    }
+
+    /**
+     * Returns the ids of the artifacts depending on any of the artifacts, directly or transitively.
+     */
+    public BitSet getTransitiveReverseDependencies(BitSet ids) {
+        return closure(ids, reverseOffsets, reverseTargets);
+    }
+
+    /**
+     * Returns the coordinates of the artifacts, in the order of their ids.
+     */
+    public List<Coordinate> getCoordinates(BitSet ids) {
+        List<Coordinate> result = new ArrayList<Coordinate>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(coordinates[id]);
+        }
+        return result;
+    }
+
+    /**
+     * Breadth-first search of the artifacts reachable from the start artifacts.
+     * The start artifacts are not part of the result, unless they are reachable from another start artifact.
+     */
+    private BitSet closure(BitSet start, int[] offsets, int[] targets) {
+        BitSet visited = new BitSet(coordinates.length);
+        int[] queue = new int[coordinates.length];
+        int head = 0;
+        int tail = 0;
+        for (int id = start.nextSetBit(0); id >= 0; id = start.nextSetBit(id + 1)) {
+            queue[tail++] = id;
+        }
+        while (head < tail) {
+            int id = queue[head++];
+            for (int edge = offsets[id]; edge < offsets[id + 1]; edge++) {
+                int target = targets[edge];
+                if (!visited.get(target)) {
+                    visited.set(target);
+                    if (!start.get(target)) {
+                        queue[tail++] = target;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+}
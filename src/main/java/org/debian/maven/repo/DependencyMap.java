@@ -0,0 +1,219 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.debian.maven.repo.POMInfo.DependencyType;
+
+/**
+ * Lists of dependencies of a pom by type of dependency, storing only the lists which are not empty.
+ *
+ * The map contains all the types of dependencies. For a type without dependencies, get() returns
+ * a view of the list of this type, which creates the list when the first dependency is added.
+ * The views write into the map and are created once per type and per map.
+ * Empty ArrayLists put in the map are not kept.
+ */
+class DependencyMap extends AbstractMap<DependencyType, List<Dependency>> {
+
+    private static final DependencyType[] TYPES = DependencyType.values();
+
+    /** The lists by ordinal of their type, null until a list is stored */
+    private List<Dependency>[] lists;
+    /** The views of the lists by ordinal of their type, null until a view is returned */
+    private EmptyList[] views;
+
+    @Override
+    public List<Dependency> get(Object key) {
+        if (!(key instanceof DependencyType)) {
+            return null;
+        }
+        DependencyType type = (DependencyType) key;
+        List<Dependency> list = stored(type);
+        return list != null ? list : view(type);
+    }
+
+    private EmptyList view(DependencyType type) {
+        if (views == null) {
+            views = new EmptyList[TYPES.length];
+        }
+        EmptyList view = views[type.ordinal()];
+        if (view == null) {
+            view = new EmptyList(type);
+            views[type.ordinal()] = view;
+        }
+        return view;
+    }
+
+    private List<Dependency> stored(DependencyType type) {
+        return lists == null ? null : lists[type.ordinal()];
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<Dependency> put(DependencyType type, List<Dependency> list) {
+        List<Dependency> previous = get(type);
+        if (list instanceof EmptyList) {
+            list = ((EmptyList) list).map.stored(((EmptyList) list).type);
+        }
+        if (list != null && list.isEmpty() && list.getClass() == ArrayList.class) {
+            list = null;
+        }
+        if (lists == null) {
+            if (list == null) {
+                return previous;
+            }
+            lists = new List[TYPES.length];
+        }
+        lists[type.ordinal()] = list;
+        return previous;
+    }
+
+    @Override
+    public List<Dependency> remove(Object key) {
+        List<Dependency> previous = get(key);
+        if (previous != null) {
+            put((DependencyType) key, null);
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof DependencyType;
+    }
+
+    @Override
+    public int size() {
+        return TYPES.length;
+    }
+
+    /**
+     * Releases the unused capacity of the lists, once the pom has been read.
+     */
+    void trimToSize() {
+        if (lists != null) {
+            for (List<Dependency> list : lists) {
+                if (list instanceof ArrayList) {
+                    ((ArrayList<Dependency>) list).trimToSize();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<DependencyType, List<Dependency>>> entrySet() {
+        return new AbstractSet<Map.Entry<DependencyType, List<Dependency>>>() {
+            public Iterator<Map.Entry<DependencyType, List<Dependency>>> iterator() {
+                return new Iterator<Map.Entry<DependencyType, List<Dependency>>>() {
+                    private int next = 0;
+
+                    public boolean hasNext() {
+                        return next < TYPES.length;
+                    }
+
+                    public Map.Entry<DependencyType, List<Dependency>> next() {
+                        if (next >= TYPES.length) {
+                            throw new NoSuchElementException();
+                        }
+                        DependencyType type = TYPES[next++];
+                        return new SimpleEntry<DependencyType, List<Dependency>>(type, get(type));
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            public int size() {
+                return TYPES.length;
+            }
+        };
+    }
+
+    /**
+     * View of the list of a type without dependencies yet.
+     */
+    private class EmptyList extends AbstractList<Dependency> {
+
+        private final DependencyType type;
+        private final DependencyMap map = DependencyMap.this;
+
+        private EmptyList(DependencyType type) {
+            this.type = type;
+        }
+
+        @Override
+        public Dependency get(int index) {
+            List<Dependency> list = stored(type);
+            if (list == null) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+            }
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            List<Dependency> list = stored(type);
+            return list == null ? 0 : list.size();
+        }
+
+        @Override
+        public Dependency set(int index, Dependency dependency) {
+            List<Dependency> list = stored(type);
+            if (list == null) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+            }
+            return list.set(index, dependency);
+        }
+
+        @Override
+        public void add(int index, Dependency dependency) {
+            List<Dependency> list = stored(type);
+            if (list == null) {
+                if (index != 0) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+                }
+                list = POMInfo.newDependencyList(type);
+                list.add(dependency);
+                put(type, list);
+            } else {
+                list.add(index, dependency);
+            }
+            modCount++;
+        }
+
+        @Override
+        public Dependency remove(int index) {
+            List<Dependency> list = stored(type);
+            if (list == null) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+            }
+            modCount++;
+            return list.remove(index);
+        }
+    }
+}
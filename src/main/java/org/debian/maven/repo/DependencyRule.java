@@ -115,15 +115,28 @@ public class DependencyRule implements Comparable<DependencyRule> {
                 && classifierRule.match(dependency.getClassifier());
     }
 
+    /**
+     * Applies the rule to the dependency, the dependency itself is returned if the rule doesn't change it.
+     */
     public Dependency apply(Dependency dependency) {
-        return new Dependency(groupRule.apply(dependency.getGroupId()), 
-                artifactRule.apply(dependency.getArtifactId()),
-                typeRule.apply(dependency.getType()),
-                versionRule.apply(dependency.getVersion()),
-                scopeRule.apply(dependency.getScope()),
-                dependency.isOptional(),
-                classifierRule.apply(dependency.getClassifier()),
-                dependency.getRelativePath());
+        String groupId = groupRule.apply(dependency.getGroupId());
+        String artifactId = artifactRule.apply(dependency.getArtifactId());
+        String type = typeRule.apply(dependency.getType());
+        String version = versionRule.apply(dependency.getVersion());
+        String scope = scopeRule.apply(dependency.getScope());
+        String classifier = classifierRule.apply(dependency.getClassifier());
+        if (same(groupId, dependency.getGroupId()) && same(artifactId, dependency.getArtifactId())
+                && same(type, dependency.getType()) && same(version, dependency.getVersion())
+                && same(scope, dependency.isScopeDefined() ? dependency.getScope() : null)
+                && same(classifier, dependency.getClassifier())) {
+            return dependency;
+        }
+        return new Dependency(groupId, artifactId, type, version, scope, dependency.isOptional(),
+                classifier, dependency.getRelativePath());
+    }
+
+    private static boolean same(String value, String original) {
+        return value == null ? original == null : value.equals(original);
     }
 
     public boolean matchesAndPreservesGroupArtifactAndType(Dependency dependency) {
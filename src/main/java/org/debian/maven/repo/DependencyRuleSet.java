@@ -45,13 +45,17 @@ public class DependencyRuleSet implements Iterable<DependencyRule> {
     }
 
     public DependencyRuleSet(String description) {
-        this(new TreeSet<DependencyRule>(), description);
+        this(new IndexedRuleSet(), description);
     }
 
     public DependencyRuleSet() {
         this("");
     }
 
+    public DependencyRuleSet(DependencyRuleSet ruleSet) {
+        this(new IndexedRuleSet(ruleSet.getRules()), ruleSet.description);
+    }
+
     public Iterator<DependencyRule> iterator() {
         return getRules().iterator();
     }
@@ -85,6 +89,14 @@ public class DependencyRuleSet implements Iterable<DependencyRule> {
         getRules().remove(rule);
     }
 
+    /**
+     * Returns the first rule matching the dependency, from the most specific rule
+     * to the most generic rule.
+     */
+    public DependencyRule findMatchingRule(Dependency dependency) {
+        return dependency.findMatchingRule(rules);
+    }
+
     public Set<DependencyRule> findMatchingRules(Dependency dependency) {
         Set<DependencyRule> matchingRules = new HashSet<DependencyRule>();
         for (DependencyRule rule : rules) {
@@ -31,6 +31,17 @@ public class DependencyRuleSetFiles {
         }
     }
 
+    /**
+     * Copy the rule sets, so that rules added while transforming a POM
+     * (automatic or published rules) do not leak into the original sets.
+     */
+    public DependencyRuleSetFiles(DependencyRuleSetFiles ruleSetFiles) {
+        this(new EnumMap<RulesType, DependencyRuleSet>(RulesType.class));
+        for (RulesType type : RulesType.values()) {
+            files.put(type, new DependencyRuleSet(ruleSetFiles.get(type)));
+        }
+    }
+
     public DependencyRuleSet get(RulesType type) {
         return files.get(type);
     }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of names of XML elements, stored as a bitset of the ids of the names.
+ *
+ * The ids are shared by all the sets: a name gets an id when it is added to a set,
+ * the other names have the id -1 and are not contained in any set. TreePath computes
+ * the id of each element once when it enters the path.
+ */
+class ElementSet {
+
+    /** The ids of the names of the elements found in the sets */
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<String, Integer>();
+
+    private final BitSet ids = new BitSet();
+
+    ElementSet(String... names) {
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    ElementSet(ElementSet other) {
+        ids.or(other.ids);
+    }
+
+    /**
+     * Returns the id of the element name, or -1 if the name is not part of any set.
+     */
+    static int id(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = IDS.get(name);
+        return id == null ? -1 : id;
+    }
+
+    private static synchronized int register(String name) {
+        Integer id = IDS.get(name);
+        if (id == null) {
+            id = IDS.size();
+            IDS.put(name, id);
+        }
+        return id;
+    }
+
+    void add(String name) {
+        ids.set(register(name));
+    }
+
+    boolean contains(int id) {
+        return id >= 0 && ids.get(id);
+    }
+
+    boolean contains(String name) {
+        return contains(id(name));
+    }
+}
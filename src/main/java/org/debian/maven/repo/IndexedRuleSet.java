@@ -0,0 +1,239 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Sorted set of rules able to find the first rule matching a dependency
+ * without testing all the rules.
+ *
+ * The rules are indexed by their literal groupId and artifactId, the rules with a generic
+ * groupId are kept in a separate bucket. Only the rules of the buckets matching the
+ * dependency are tested, in the natural order of the rules, so the first matching rule
+ * is the same as with a scan of the whole set.
+ *
+ * The index is built on the first search and discarded when the set is modified.
+ * Modifications made through the views returned by subSet(), headSet()... are not tracked.
+ */
+public class IndexedRuleSet extends TreeSet<DependencyRule> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int[] NO_RULES = new int[0];
+
+    private DependencyRule[] sortedRules;
+    private Map<String, Map<String, int[]>> byGroupAndArtifact;
+    private Map<String, int[]> byGroup;
+    private Map<String, int[]> byArtifact;
+    private int[] genericRules;
+
+    public IndexedRuleSet() {
+        super();
+    }
+
+    public IndexedRuleSet(Collection<DependencyRule> rules) {
+        super();
+        addAll(rules);
+    }
+
+    /**
+     * Returns the first rule in natural order matching the dependency, or null.
+     */
+    public DependencyRule findMatchingRule(Dependency dependency) {
+        if (sortedRules == null) {
+            buildIndex();
+        }
+        int[] groupAndArtifactRules = NO_RULES;
+        Map<String, int[]> byArtifactForGroup = byGroupAndArtifact.get(dependency.getGroupId());
+        if (byArtifactForGroup != null) {
+            groupAndArtifactRules = get(byArtifactForGroup, dependency.getArtifactId());
+        }
+        int[][] candidates = { groupAndArtifactRules, get(byGroup, dependency.getGroupId()),
+                get(byArtifact, dependency.getArtifactId()), genericRules };
+
+        // Merge the candidates by position to test them in the order of the set
+        int[] next = new int[candidates.length];
+        while (true) {
+            int bucket = -1;
+            int position = Integer.MAX_VALUE;
+            for (int i = 0; i < candidates.length; i++) {
+                if (next[i] < candidates[i].length && candidates[i][next[i]] < position) {
+                    position = candidates[i][next[i]];
+                    bucket = i;
+                }
+            }
+            if (bucket < 0) {
+                return null;
+            }
+            next[bucket]++;
+            DependencyRule rule = sortedRules[position];
+            if (rule.matches(dependency)) {
+                return rule;
+            }
+        }
+    }
+
+    private static int[] get(Map<String, int[]> bucket, String key) {
+        if (key == null) {
+            return NO_RULES;
+        }
+        int[] rules = bucket.get(key);
+        return rules == null ? NO_RULES : rules;
+    }
+
+    private void buildIndex() {
+        DependencyRule[] rules = toArray(new DependencyRule[size()]);
+        Map<String, Map<String, List<Integer>>> groupAndArtifactLists = new HashMap<String, Map<String, List<Integer>>>();
+        Map<String, List<Integer>> groupLists = new HashMap<String, List<Integer>>();
+        Map<String, List<Integer>> artifactLists = new HashMap<String, List<Integer>>();
+        List<Integer> genericList = new ArrayList<Integer>();
+
+        for (int i = 0; i < rules.length; i++) {
+            String group = rules[i].getGroupRule().getLiteral();
+            String artifact = rules[i].getArtifactRule().getLiteral();
+            if (group != null && artifact != null) {
+                Map<String, List<Integer>> artifactsForGroup = groupAndArtifactLists.get(group);
+                if (artifactsForGroup == null) {
+                    artifactsForGroup = new HashMap<String, List<Integer>>();
+                    groupAndArtifactLists.put(group, artifactsForGroup);
+                }
+                addPosition(artifactsForGroup, artifact, i);
+            } else if (group != null) {
+                addPosition(groupLists, group, i);
+            } else if (artifact != null) {
+                addPosition(artifactLists, artifact, i);
+            } else {
+                genericList.add(i);
+            }
+        }
+
+        byGroupAndArtifact = new HashMap<String, Map<String, int[]>>();
+        for (Map.Entry<String, Map<String, List<Integer>>> entry : groupAndArtifactLists.entrySet()) {
+            byGroupAndArtifact.put(entry.getKey(), toPositions(entry.getValue()));
+        }
+        byGroup = toPositions(groupLists);
+        byArtifact = toPositions(artifactLists);
+        genericRules = toPositions(genericList);
+        sortedRules = rules;
+    }
+
+    private static void addPosition(Map<String, List<Integer>> lists, String key, int position) {
+        List<Integer> list = lists.get(key);
+        if (list == null) {
+            list = new ArrayList<Integer>();
+            lists.put(key, list);
+        }
+        list.add(position);
+    }
+
+    private static Map<String, int[]> toPositions(Map<String, List<Integer>> lists) {
+        Map<String, int[]> positions = new HashMap<String, int[]>();
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+            positions.put(entry.getKey(), toPositions(entry.getValue()));
+        }
+        return positions;
+    }
+
+    private static int[] toPositions(List<Integer> list) {
+        int[] positions = new int[list.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = list.get(i);
+        }
+        return positions;
+    }
+
+    private void invalidateIndex() {
+        sortedRules = null;
+        byGroupAndArtifact = null;
+        byGroup = null;
+        byArtifact = null;
+        genericRules = null;
+    }
+
+    @Override
+    public boolean add(DependencyRule rule) {
+        invalidateIndex();
+        return super.add(rule);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends DependencyRule> rules) {
+        invalidateIndex();
+        return super.addAll(rules);
+    }
+
+    @Override
+    public boolean remove(Object rule) {
+        invalidateIndex();
+        return super.remove(rule);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> rules) {
+        invalidateIndex();
+        return super.removeAll(rules);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> rules) {
+        invalidateIndex();
+        return super.retainAll(rules);
+    }
+
+    @Override
+    public void clear() {
+        invalidateIndex();
+        super.clear();
+    }
+
+    @Override
+    public DependencyRule pollFirst() {
+        invalidateIndex();
+        return super.pollFirst();
+    }
+
+    @Override
+    public DependencyRule pollLast() {
+        invalidateIndex();
+        return super.pollLast();
+    }
+
+    @Override
+    public Iterator<DependencyRule> iterator() {
+        final Iterator<DependencyRule> iterator = super.iterator();
+        return new Iterator<DependencyRule>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public DependencyRule next() {
+                return iterator.next();
+            }
+
+            public void remove() {
+                invalidateIndex();
+                iterator.remove();
+            }
+        };
+    }
+}
@@ -117,7 +117,7 @@ public class ListOfPOMs {
     /**
      * Returns the path of the specified file relatively to the base directory.
      */
-    private String relativePath(File pom) {
+    public String relativePath(File pom) {
         return pom.getAbsolutePath().substring(baseDir.getAbsolutePath().length() + 1);
     }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.debian.maven.repo.POMReader.Section;
+
+/**
+ * Cache of the poms read from files, shared by the POMReaders.
+ *
+ * The poms are identified by the path of their file, and an entry is discarded when the size
+ * or the modification time of the file changes. The least recently used entries are removed
+ * when the cache is full. The cache keeps its own copy of the poms and returns a copy on each
+ * hit, so the callers are free to modify the poms they get.
+ */
+public class POMCache {
+
+    private final Map<String, Entry> entries;
+    private long hits;
+    private long misses;
+
+    private static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final Set<Section> sections;
+        private final POMInfo pom;
+
+        private Entry(long length, long lastModified, Set<Section> sections, POMInfo pom) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.sections = sections;
+            this.pom = pom;
+        }
+    }
+
+    public POMCache(final int maxSize) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the pom read from the file, or null if the pom is not in the cache,
+     * if the file has changed since it was read or if the cached pom doesn't contain all the sections.
+     */
+    public synchronized POMInfo get(File file, Set<Section> sections) {
+        String path = file.getAbsolutePath();
+        Entry entry = entries.get(path);
+        if (entry != null && (entry.length != file.length() || entry.lastModified != file.lastModified())) {
+            entries.remove(path);
+            entry = null;
+        }
+        if (entry == null || !entry.sections.containsAll(sections)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.pom.copy();
+    }
+
+    /**
+     * Stores a copy of the pom read from the file.
+     */
+    public synchronized void put(File file, long length, long lastModified, Set<Section> sections, POMInfo pom) {
+        String path = file.getAbsolutePath();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified
+                && entry.sections.containsAll(sections)) {
+            return;
+        }
+        Set<Section> cachedSections = EnumSet.noneOf(Section.class);
+        cachedSections.addAll(sections);
+        entries.put(path, new Entry(length, lastModified, cachedSections, pom.copy()));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -37,12 +37,12 @@ import static org.debian.maven.repo.DependencyRuleSetFiles.RulesType.*;
 public class POMCleaner extends POMTransformer {
 
     private static final Logger log = Logger.getLogger(POMCleaner.class.getName());
-    private static final List<String> WRITE_IGNORED_ELEMENTS = Arrays.asList("build",
+    private static final ElementSet WRITE_IGNORED_ELEMENTS = new ElementSet("build",
                 "distributionManagement", "profiles", "ciManagement", "prerequisites",
                 "repositories", "pluginRepositories", "reports", "reporting", "modelVersion",
                 "parent");
     private boolean keepAllElements = false;
-    private Collection<String> keepElements = new ArrayList<String>();
+    private ElementSet keepElements = new ElementSet();
 
     public POMCleaner() {
     }
@@ -62,6 +62,20 @@ public class POMCleaner extends POMTransformer {
     public void cleanPom(File originalPom, File targetPom, File pomProperties,
             boolean noParent, boolean hasPackageVersion, boolean keepPomVersion,
             boolean keepParentVersion, String setVersion, String debianPackage) {
+        cleanPom(originalPom, targetPom, pomProperties, null, null, noParent, hasPackageVersion, keepPomVersion,
+                keepParentVersion, setVersion, debianPackage);
+    }
+
+    /**
+     * Cleans the POM and, if keptVersionTargetPom is not null, writes in the same pass a second
+     * cleaned POM keeping the original version of the POM, with its properties in keptVersionPomProperties.
+     * Both variants are produced from a single parse of the original POM, they differ only by the
+     * version of the POM itself.
+     */
+    public void cleanPom(File originalPom, File targetPom, File pomProperties,
+            File keptVersionTargetPom, File keptVersionPomProperties,
+            boolean noParent, boolean hasPackageVersion, boolean keepPomVersion,
+            boolean keepParentVersion, String setVersion, String debianPackage) {
 
         if (targetPom.getParentFile() != null) {
             targetPom.getParentFile().mkdirs();
@@ -69,20 +83,17 @@ public class POMCleaner extends POMTransformer {
         if (pomProperties.getParentFile() != null) {
             pomProperties.getParentFile().mkdirs();
         }
+        if (keptVersionPomProperties != null && keptVersionPomProperties.getParentFile() != null) {
+            keptVersionPomProperties.getParentFile().mkdirs();
+        }
 
         try {
-            POMInfo info = transformPom(originalPom, targetPom, noParent, hasPackageVersion, keepPomVersion, keepParentVersion, setVersion, debianPackage);
-
-            Properties pomProps = new Properties();
-            pomProps.put("groupId", info.getThisPom().getGroupId());
-            pomProps.put("artifactId", info.getThisPom().getArtifactId());
-            pomProps.put("type", info.getThisPom().getType());
-            pomProps.put("version", info.getOriginalVersion());
-            pomProps.put("debianVersion", info.getThisPom().getVersion());
-            pomProps.put("classifier", info.getThisPom().getClassifier());
-            FileOutputStream pomWriter = new FileOutputStream(pomProperties);
-            pomProps.store(pomWriter, "POM properties");
-            pomWriter.close();
+            POMInfo info = transformPom(originalPom, targetPom, keptVersionTargetPom, noParent, hasPackageVersion,
+                    keepPomVersion, keepParentVersion, setVersion, debianPackage, false);
+            writePomProperties(info, pomProperties);
+            if (keptVersionPomProperties != null) {
+                writePomProperties(info, keptVersionPomProperties);
+            }
 
         } catch (IOException ex) {
             log.log(Level.SEVERE, null, ex);
@@ -91,6 +102,69 @@ public class POMCleaner extends POMTransformer {
         }
     }
 
+    /**
+     * Cleans all the POM files listed in the <tt>debian/&lt;package>.poms</tt> file.
+     *
+     * For each POM file, the cleaned POM and its properties are written into the directory
+     * <tt>targetDir/&lt;path to pom></tt> as <tt>pom.xml</tt> and <tt>pom.properties</tt>,
+     * and the variant keeping the original version of the POM as <tt>pom.xml.keep</tt> and
+     * <tt>pom.properties.keep</tt>, like mh_installpom expects them.
+     *
+     * The rules are loaded only once, but each POM is cleaned with its own copy of the rules
+     * to produce the same result as cleaning the POM files one by one. Both variants of a POM
+     * are written from a single parse of the POM.
+     */
+    public void cleanPoms(final ListOfPOMs listOfPOMs, final File targetDir, final boolean keepPomVersion,
+            final String setVersion, final String debianPackage) {
+
+        final DependencyRuleSetFiles rulesFiles = getRulesFiles();
+        final ElementSet defaultKeepElements = keepElements;
+
+        listOfPOMs.foreachPoms(new POMHandler() {
+
+            public void handlePOM(File pomFile, boolean noParent, boolean hasPackageVersion) throws Exception {
+                POMOptions options = listOfPOMs.getPOMOptions(pomFile);
+                File pomTargetDir = new File(targetDir, listOfPOMs.relativePath(pomFile));
+
+                keepElements = new ElementSet(defaultKeepElements);
+                if (options.getKeepElements() != null) {
+                    StringTokenizer st = new StringTokenizer(options.getKeepElements(), ",");
+                    while (st.hasMoreTokens()) {
+                        keepElements.add(st.nextToken());
+                    }
+                }
+
+                if (isVerbose()) {
+                    System.out.println("Cleaning POM " + pomFile + ", saving the result into " + pomTargetDir);
+                }
+
+                setRulesFiles(new DependencyRuleSetFiles(rulesFiles));
+                cleanPom(pomFile, new File(pomTargetDir, "pom.xml"), new File(pomTargetDir, "pom.properties"),
+                        new File(pomTargetDir, "pom.xml.keep"), new File(pomTargetDir, "pom.properties.keep"),
+                        noParent, hasPackageVersion, keepPomVersion, false, setVersion, debianPackage);
+            }
+
+            public void ignorePOM(File pomFile) throws Exception {
+            }
+        });
+
+        setRulesFiles(rulesFiles);
+        keepElements = defaultKeepElements;
+    }
+
+    private void writePomProperties(POMInfo info, File pomProperties) throws IOException {
+        Properties pomProps = new Properties();
+        pomProps.put("groupId", info.getThisPom().getGroupId());
+        pomProps.put("artifactId", info.getThisPom().getArtifactId());
+        pomProps.put("type", info.getThisPom().getType());
+        pomProps.put("version", info.getOriginalVersion());
+        pomProps.put("debianVersion", info.getThisPom().getVersion());
+        pomProps.put("classifier", info.getThisPom().getClassifier());
+        FileOutputStream pomWriter = new FileOutputStream(pomProperties);
+        pomProps.store(pomWriter, "POM properties");
+        pomWriter.close();
+    }
+
     protected void transformingPom(POMInfo pom) {
         if (pom.getThisPom().isPlugin()) {
             getRulesFiles().get(IGNORE).add(new DependencyRule(pom.getThisPom().getGroupId() + " "
@@ -111,10 +185,11 @@ public class POMCleaner extends POMTransformer {
         if (keepAllElements || ignore) {
             return ignore;
         }
-        if (keepElements.contains(element)) {
+        int elementId = path.lastId();
+        if (keepElements.contains(elementId)) {
             return false;
         }
-        if (path.size() > 2 && keepElements.contains(path.get(1))) {
+        if (path.size() > 2 && keepElements.contains(path.id(1))) {
             if ("version".equals(element)) {
                 if ("plugin".equals(path.parent(1))) {
                     return true;
@@ -125,7 +200,7 @@ public class POMCleaner extends POMTransformer {
 //        if (WRITE_IGNORED_ELEMENTS.contains(element)) {
 //            System.out.println("Write ignored " + element + " " + printPath(path) + " for " + dependency);
 //        }
-        return path.size() == 2 && WRITE_IGNORED_ELEMENTS.contains(element);
+        return path.size() == 2 && WRITE_IGNORED_ELEMENTS.contains(elementId);
     }
 
     protected boolean acceptDependency(Dependency dependency, POMInfo info) {
@@ -146,7 +221,8 @@ public class POMCleaner extends POMTransformer {
     public static void main(String[] args) {
         if (args.length == 0 || "-h".equals(args[0]) || "--help".equals(args[0])) {
             System.out.println("Purpose: cleans a Maven POM for inclusion in the Debian/Maven repository in /usr/share/maven-repo");
-            System.out.println("Usage: [option] original-pom target-file pom-properties");
+            System.out.println("Usage: [option] original-pom target-file pom-properties [kept-version-target-file kept-version-pom-properties]");
+            System.out.println("   or: [option] --poms=<poms> target-dir");
             System.out.println("");
             System.out.println("Options:");
             System.out.println("  -v, --verbose: be extra verbose");
@@ -168,6 +244,8 @@ public class POMCleaner extends POMTransformer {
             System.out.println("    This option can be repeated, in order to have multiple sets of");
             System.out.println("    dependencies to ignore, useful in situations such as when the Maven clean");
             System.out.println("    target requires more dependencies or plugins to ignore than the build target");
+            System.out.println("  --clean-ignore-rules=<rules>: path to the file containing the rules used");
+            System.out.println("    to remove certain dependencies, added to the ignore rules");
             System.out.println("  -I<rule>, --extra-ignore-rule=<rule>: extra rule used to remove dependencies");
             System.out.println("    from the transformed POM");
             System.out.println("    May occur multiple times, instead of or in addition to -i");
@@ -189,11 +267,25 @@ public class POMCleaner extends POMTransformer {
             System.out.println("  -m<repo root>--maven-repo=<repo root>: location of the Maven repository,");
             System.out.println("    used to force the versions of the Maven plugins used in the current");
             System.out.println("    POM file with the versions found in the repository");
+            System.out.println("  --maven-repo-index=<file>: index of the Maven repository, created after");
+            System.out.println("    the first scan of the repository and used as long as the repository");
+            System.out.println("    is not modified, to avoid reading all the POM files of the repository");
+            System.out.println("  --poms=<poms>: location of the file listing the POM files to clean,");
+            System.out.println("    usually debian/$package.poms. All the POM files are cleaned at once");
+            System.out.println("    using the options defined for each POM in this file");
             System.out.println("");
             System.out.println("Arguments:");
             System.out.println("  original-pom: location of the original POM");
             System.out.println("  target-file: where the cleaned POM will be written to");
             System.out.println("  pom-properties: property file where the POM properties will be written to");
+            System.out.println("  kept-version-target-file: optional, where a second cleaned POM keeping the");
+            System.out.println("    original version of the POM will be written to. Both POMs are produced");
+            System.out.println("    while reading the original POM only once");
+            System.out.println("  kept-version-pom-properties: property file for kept-version-target-file");
+            System.out.println("  target-dir: with --poms, directory where the cleaned POMs and their properties");
+            System.out.println("    are written to. Each POM is cleaned into <target-dir>/<path to pom>/pom.xml");
+            System.out.println("    and <target-dir>/<path to pom>/pom.properties, and with the original version");
+            System.out.println("    kept into pom.xml.keep and pom.properties.keep in the same directory");
             System.out.println("");
             System.out.println("Description:");
             System.out.println("  Cleans a Maven POM and prepare it for inclusion in the Debian");
@@ -267,6 +359,8 @@ public class POMCleaner extends POMTransformer {
         File rulesFile = null;
         File publishedRulesFile = null;
         File mavenRepo = null;
+        File mavenRepoIndex = null;
+        File pomsFile = null;
         List<String> rulesExtra = new ArrayList<String>();
         List<String> publishedRulesExtra = new ArrayList<String>();
         List<String> ignoreRulesExtra = new ArrayList<String>();
@@ -321,6 +415,8 @@ public class POMCleaner extends POMTransformer {
                 } else {
                     ignoreRulesFiles.add(new File(arg.substring("--ignore-rules=".length())));
                 }
+            } else if (arg.startsWith("--clean-ignore-rules=")) {
+                ignoreRulesFiles.add(new File(arg.substring("--clean-ignore-rules=".length())));
             } else if (arg.startsWith("-I")) {
                 ignoreRulesExtra.add(arg.substring(2));
             } else if (arg.startsWith("--extra-ignore-rule=")) {
@@ -333,17 +429,13 @@ public class POMCleaner extends POMTransformer {
                 mavenRepo = new File(arg.substring(2));
             } else if (arg.startsWith("--maven-repo=")) {
                 mavenRepo = new File(arg.substring("--maven-repo=".length()));
+            } else if (arg.startsWith("--maven-repo-index=")) {
+                mavenRepoIndex = new File(arg.substring("--maven-repo-index=".length()));
+            } else if (arg.startsWith("--poms=")) {
+                pomsFile = new File(arg.substring("--poms=".length()));
             }
             i = inc(i, args);
         }
-        File originalPom = new File(args[i++].trim());
-        File targetPom = new File(args[i++].trim());
-        File pomProperties = new File(args[i++].trim());
-
-        if (verbose) {
-            System.out.println("Cleaning POM " + originalPom.getAbsolutePath() +
-                    ", saving the result into " + targetPom.getAbsolutePath());
-        }
 
         if (!noRules) {
             DependencyRuleSet rules = cleaner.getRulesFiles().get(RULES);
@@ -365,13 +457,42 @@ public class POMCleaner extends POMTransformer {
 
         if (mavenRepo != null) {
             Repository repository = new Repository(mavenRepo);
+            repository.setIndexFile(mavenRepoIndex);
             cleaner.setRepository(repository);
             cleaner.usePluginVersionsFromRepository();
         }
 
         cleaner.setKeepAllElements(keepAllElements);
-        cleaner.cleanPom(originalPom, targetPom, pomProperties, noParent, hasPackageVersion,
-                keepPomVersion, keepParentVersion, setVersion, debianPackage);
+        cleaner.setVerbose(verbose);
+
+        if (pomsFile != null) {
+            File targetDir = new File(args[i].trim());
+            ListOfPOMs listOfPOMs = new ListOfPOMs(pomsFile);
+            listOfPOMs.setVerbose(verbose);
+            cleaner.cleanPoms(listOfPOMs, targetDir, keepPomVersion, setVersion, debianPackage);
+            return;
+        }
+
+        File originalPom = new File(args[i++].trim());
+        File targetPom = new File(args[i++].trim());
+        File pomProperties = new File(args[i++].trim());
+        File keptVersionTargetPom = null;
+        File keptVersionPomProperties = null;
+        if (i + 1 < args.length) {
+            keptVersionTargetPom = new File(args[i++].trim());
+            keptVersionPomProperties = new File(args[i++].trim());
+        }
+
+        if (verbose) {
+            System.out.println("Cleaning POM " + originalPom.getAbsolutePath() +
+                    ", saving the result into " + targetPom.getAbsolutePath());
+            if (keptVersionTargetPom != null) {
+                System.out.println("and the variant keeping the POM version into " + keptVersionTargetPom.getAbsolutePath());
+            }
+        }
+
+        cleaner.cleanPom(originalPom, targetPom, pomProperties, keptVersionTargetPom, keptVersionPomProperties,
+                noParent, hasPackageVersion, keepPomVersion, keepParentVersion, setVersion, debianPackage);
     }
 
     private static int inc(int i, String[] args) {
@@ -29,10 +29,17 @@ public class POMInfo implements Cloneable {
     private Dependency parent;
     private Dependency thisPom;
     private List<String> modules;
-    private Map<DependencyType, List<Dependency>> dependencies = POMInfo.initDependenciesMultiMap();
-    // Use a TreeMap to guarantee ordering of the keys.
-    private TreeMap<String, String> properties;
+    private Map<DependencyType, List<Dependency>> dependencies = new DependencyMap();
+    // Not sorted, the properties are sorted when they are written
+    private Map<String, String> properties;
     private POMInfo parentPOM;
+    /** Versions of the managed dependencies and plugins of this pom, built when first needed */
+    private Map<String, String> managedVersions;
+    /** The management lists indexed in managedVersions and their number of changes, to detect their changes */
+    private List<?>[] managedLists;
+    private int[] managedListChanges;
+
+    private static final DependencyType[] MANAGEMENT_LISTS = { DEPENDENCY_MANAGEMENT_LIST, PLUGIN_MANAGEMENT, PLUGIN_MANAGEMENT_DEPENDENCIES };
 
     public Dependency getOriginalPom() {
         return originalPom;
@@ -81,20 +88,26 @@ public class POMInfo implements Cloneable {
         this.modules = modules;
     }
 
-    public TreeMap<String, String> getProperties() {
+    public Map<String, String> getProperties() {
         return properties;
     }
 
     public void setProperties(Map<String, String> properties) {
-        this.properties = new TreeMap<String, String>(properties);
+        this.properties = new HashMap<String, String>(properties);
     }
 
     public Set<DependencyRule> getPublishedRules() {
-        Set<DependencyRule> rules = new TreeSet<DependencyRule>();
         if (getProperties() == null) {
-            return rules;
+            return new TreeSet<DependencyRule>();
         }
-        String mavenRules = getProperties().get("debian.mavenRules");
+        return parsePublishedRules(getProperties().get("debian.mavenRules"));
+    }
+
+    /**
+     * Parses the rules of the debian.mavenRules property.
+     */
+    static Set<DependencyRule> parsePublishedRules(String mavenRules) {
+        Set<DependencyRule> rules = new TreeSet<DependencyRule>();
         if (mavenRules != null) {
             for(String ruleString : mavenRules.split(",")) {
                 rules.add(new DependencyRule(ruleString.trim()));
@@ -108,7 +121,16 @@ public class POMInfo implements Cloneable {
     }
 
     public void setDependencies(Map<DependencyType, List<Dependency>> dependencies) {
+        if (!(dependencies instanceof DependencyMap)) {
+            Map<DependencyType, List<Dependency>> map = new DependencyMap();
+            map.putAll(dependencies);
+            dependencies = map;
+        }
+        for (DependencyType depType : MANAGEMENT_LISTS) {
+            dependencies.put(depType, managementList(dependencies.get(depType)));
+        }
         this.dependencies = dependencies;
+        managedVersions = null;
     }
 
     /**
@@ -125,13 +147,13 @@ public class POMInfo implements Cloneable {
         result.setOriginalPom(getThisPom());
         result.setThisPom(getThisPom().applyRules(rules));
 
-        Map<DependencyType, List<Dependency>> dependencies = new EnumMap<DependencyType, List<Dependency>>(DependencyType.class);
+        Map<DependencyType, List<Dependency>> dependencies = new DependencyMap();
         for(DependencyType depType : DependencyType.values()) {
             dependencies.put(depType, Dependency.applyRules(this.dependencies.get(depType), rules));
         }
         result.setDependencies(dependencies);
 
-        result.setProperties(new TreeMap<String, String>(getProperties()));
+        result.setProperties(getProperties());
         result.setModules(getModules());
 
         result.setParent(getParent());
@@ -159,12 +181,14 @@ public class POMInfo implements Cloneable {
         for(DependencyType depType : DependencyType.values()) {
             dependencies.put(depType, Dependency.applyRules(dependencies.get(depType), rules));
         }
+        setDependencies(dependencies);
     }
 
     public void applyIgnoreRulesOnDependenciesAndPlugins(Set<DependencyRule> rules) {
         for(DependencyType depType : DependencyType.values()) {
             dependencies.put(depType, Dependency.applyIgnoreRules(dependencies.get(depType), rules));
         }
+        setDependencies(dependencies);
     }
 
     public void setParentPOM(POMInfo parentPOM) {
@@ -173,11 +197,11 @@ public class POMInfo implements Cloneable {
             if (this.parent == null) {
                 this.parent = parentPOM.getThisPom();
             }
-            mergeManagement(dependencies.get(DEPENDENCY_MANAGEMENT_LIST),
-                parentPOM.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST));
+            dependencies.put(DEPENDENCY_MANAGEMENT_LIST, mergeManagement(dependencies.get(DEPENDENCY_MANAGEMENT_LIST),
+                parentPOM.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST)));
 
-            mergeManagement(dependencies.get(PLUGIN_MANAGEMENT),
-                parentPOM.getDependencies().get(PLUGIN_MANAGEMENT));
+            dependencies.put(PLUGIN_MANAGEMENT, mergeManagement(dependencies.get(PLUGIN_MANAGEMENT),
+                parentPOM.getDependencies().get(PLUGIN_MANAGEMENT)));
         }
         resolveVersions(dependencies.get(DEPENDENCIES), dependencies.get(DEPENDENCY_MANAGEMENT_LIST));
         resolveVersions(dependencies.get(PLUGIN_DEPENDENCIES), dependencies.get(DEPENDENCY_MANAGEMENT_LIST));
@@ -186,31 +210,45 @@ public class POMInfo implements Cloneable {
         resolveVersions(dependencies.get(REPORTING_PLUGINS), dependencies.get(PLUGIN_MANAGEMENT));
         resolveVersions(dependencies.get(PROFILE_DEPENDENCIES), dependencies.get(PROFILE_DEPENDENCY_MANAGEMENT_LIST));
         resolveVersions(dependencies.get(PROFILE_PLUGINS), dependencies.get(PROFILE_PLUGIN_MANAGEMENT));
+        managedVersions = null;
     }
 
-    private void mergeManagement(List<Dependency> target, List<Dependency> management) {
-        resolveVersions(target, management);
-        nextParentDep: for (Dependency parentDep: management) {
-            for (Dependency dependency: target) {
-                if (dependency.equalsIgnoreVersion(parentDep)) {
-                    continue nextParentDep;
-                }
+    /**
+     * Returns the management list of this pom followed by the entries of the management list
+     * of the parent not overridden in this pom. The entries of the parent are shared, not copied.
+     *
+     * When the pom is merged with another parent, the entries of the new parent are added
+     * after the entries already merged.
+     */
+    private List<Dependency> mergeManagement(List<Dependency> target, List<Dependency> management) {
+        if (target instanceof ManagementList) {
+            ManagementList merged = (ManagementList) target;
+            if (merged.inherited == management) {
+                // Already merged with the same parent
+                resolveVersions(target, management);
+                return target;
+            }
+            if (merged.inherited == null) {
+                target = merged.local;
             }
-            target.add(new Dependency(parentDep));
         }
+        resolveVersions(target, management);
+        if (management.isEmpty()) {
+            return target;
+        }
+        if (target.isEmpty()) {
+            // Don't keep a view of the empty list of the map, the list is created on the first addition
+            target = Collections.emptyList();
+        }
+        return new ManagementList(target, management);
     }
 
     public String getVersionFromManagementDependency(Dependency dependency) {
-        for (DependencyType depType: Arrays.asList(DEPENDENCY_MANAGEMENT_LIST, PLUGIN_MANAGEMENT, PLUGIN_MANAGEMENT_DEPENDENCIES)) {
-            for (Dependency mgtDep: dependencies.get(depType)) {
-                if (mgtDep.equalsIgnoreVersion(dependency) ) {
-                    if (mgtDep.getVersion() != null) {
-                        //System.out.println("In " + getThisPom() + " - found version " + mgtDep.getVersion() + " for " +
-                        //  dependency.getGroupId() + ":" + dependency.getArtifactId() + " according to the list of " + listType);
-                        return mgtDep.getVersion();
-                    }
-                }
-            }
+        String version = getManagedVersions().get(managementKey(dependency));
+        if (version != null) {
+            //System.out.println("In " + getThisPom() + " - found version " + version + " for " +
+            //  dependency.getGroupId() + ":" + dependency.getArtifactId() + " according to the management lists");
+            return version;
         }
 
         if (parentPOM != null) {
@@ -219,26 +257,111 @@ public class POMInfo implements Cloneable {
         return null;
     }
 
-    private void resolveVersions(List<Dependency> deps, List<Dependency> management) {
-        for (Dependency parentDep: management) {
-            for (Dependency dependency: deps) {
-                if (dependency.getVersion() == null || !dependency.isScopeDefined()) {
-                    if (dependency.getGroupId().equals(parentDep.getGroupId()) &&
-                        dependency.getArtifactId().equals(parentDep.getArtifactId()) &&
-                        dependency.getType().equals(parentDep.getType())) {
-
-                        if (dependency.getVersion() == null) {
-                            //System.out.println("In " + getThisPom() + " - resolve version to " + parentDep.getVersion() + " for " +
-                            //  dependency.getGroupId() + ":" + dependency.getArtifactId() + " according to parent POM");
-                            dependency.setVersion(parentDep.getVersion());
-                        }
-                        if (!dependency.isScopeDefined()) {
-                            dependency.setScope(parentDep.getScope());
-                        }
-
-                        break;
+    /**
+     * Returns the first version found for each dependency in the management lists, indexed by managementKey().
+     * The index is built again when the lists have been replaced or modified, and when the
+     * versions are resolved with the parent pom.
+     */
+    private Map<String, String> getManagedVersions() {
+        if (managedVersions != null) {
+            for (int i = 0; i < MANAGEMENT_LISTS.length; i++) {
+                List<Dependency> list = indexedList(MANAGEMENT_LISTS[i]);
+                if (list != managedLists[i] || changes(list) != managedListChanges[i]) {
+                    managedVersions = null;
+                    break;
+                }
+            }
+        }
+        if (managedVersions == null) {
+            Map<String, String> versions = new HashMap<String, String>();
+            managedLists = new List<?>[MANAGEMENT_LISTS.length];
+            managedListChanges = new int[MANAGEMENT_LISTS.length];
+            for (int i = 0; i < MANAGEMENT_LISTS.length; i++) {
+                List<Dependency> list = indexedList(MANAGEMENT_LISTS[i]);
+                for (Dependency mgtDep: list) {
+                    String key = managementKey(mgtDep);
+                    if (mgtDep.getVersion() != null && !versions.containsKey(key)) {
+                        versions.put(key, mgtDep.getVersion());
                     }
                 }
+                managedLists[i] = list;
+                managedListChanges[i] = changes(list);
+            }
+            managedVersions = versions;
+        }
+        return managedVersions;
+    }
+
+    /**
+     * Returns the list of dependencies of this type, all the empty lists being the same list.
+     */
+    private List<Dependency> indexedList(DependencyType depType) {
+        List<Dependency> list = dependencies.get(depType);
+        return list.isEmpty() ? Collections.<Dependency>emptyList() : list;
+    }
+
+    /**
+     * Key identifying the dependencies equal when ignoring the version, see Dependency.equalsIgnoreVersion().
+     */
+    private static String managementKey(Dependency dependency) {
+        String type = dependency.getType();
+        if ("bundle".equals(type)) {
+            type = "jar";
+        }
+        return key(dependency.getGroupId(), dependency.getArtifactId(), type, dependency.getClassifier());
+    }
+
+    private static String key(String... values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            // Distinguish the null values from the "null" strings
+            sb.append(value == null ? "\u0000" : value).append(':');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the version and scope of the dependencies missing them, using the first matching entries
+     * of the management list. Each entry of the management list is used for at most one dependency.
+     * The dependencies are not modified, they are replaced in the list by resolved copies, as they
+     * may be shared with other poms.
+     */
+    private void resolveVersions(List<Dependency> deps, List<Dependency> management) {
+        if (deps.isEmpty() || management.isEmpty()) {
+            return;
+        }
+        // Positions of the dependencies to resolve, by groupId, artifactId and type
+        Map<String, LinkedList<Integer>> unresolvedDeps = new HashMap<String, LinkedList<Integer>>();
+        for (int i = 0; i < deps.size(); i++) {
+            Dependency dependency = deps.get(i);
+            if (dependency.getVersion() == null || !dependency.isScopeDefined()) {
+                String key = key(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType());
+                LinkedList<Integer> positions = unresolvedDeps.get(key);
+                if (positions == null) {
+                    positions = new LinkedList<Integer>();
+                    unresolvedDeps.put(key, positions);
+                }
+                positions.add(i);
+            }
+        }
+        for (Dependency parentDep: management) {
+            LinkedList<Integer> positions = unresolvedDeps.get(key(parentDep.getGroupId(), parentDep.getArtifactId(), parentDep.getType()));
+            if (positions == null || positions.isEmpty()) {
+                continue;
+            }
+            int position = positions.peek();
+            Dependency dependency = new Dependency(deps.get(position));
+            if (dependency.getVersion() == null) {
+                //System.out.println("In " + getThisPom() + " - resolve version to " + parentDep.getVersion() + " for " +
+                //  dependency.getGroupId() + ":" + dependency.getArtifactId() + " according to parent POM");
+                dependency.setVersion(parentDep.getVersion());
+            }
+            if (!dependency.isScopeDefined()) {
+                dependency.setScope(parentDep.getScope());
+            }
+            deps.set(position, dependency);
+            if (dependency.getVersion() != null && dependency.isScopeDefined()) {
+                positions.remove();
             }
         }
     }
@@ -258,12 +381,184 @@ public class POMInfo implements Cloneable {
         return clone;
     }
 
-    public static Map<DependencyType, List<Dependency>> initDependenciesMultiMap() {
-        Map<DependencyType, List<Dependency>> dependencies = new EnumMap<DependencyType, List<Dependency>>(DependencyType.class);
-        for (DependencyType depType : DependencyType.values()) {
-            dependencies.put(depType, new ArrayList<Dependency>());
+    /**
+     * Returns a deep copy of this pom, which can be modified without changing this pom.
+     * The parent POMInfo is shared.
+     */
+    public POMInfo copy() {
+        POMInfo copy = new POMInfo();
+        copy.originalParentVersion = originalParentVersion;
+        copy.originalPom = copy(originalPom);
+        copy.parent = copy(parent);
+        copy.thisPom = copy(thisPom);
+        copy.modules = modules == null ? null : new ArrayList<String>(modules);
+        for (Map.Entry<DependencyType, List<Dependency>> entry : dependencies.entrySet()) {
+            List<Dependency> list = new ArrayList<Dependency>(entry.getValue().size());
+            for (Dependency dependency : entry.getValue()) {
+                list.add(copy(dependency));
+            }
+            copy.dependencies.put(entry.getKey(), list);
         }
-        return dependencies;
+        copy.setDependencies(copy.dependencies);
+        copy.properties = properties == null ? null : new HashMap<String, String>(properties);
+        copy.parentPOM = parentPOM;
+        return copy;
+    }
+
+    /**
+     * Returns the dependencies of this pom, without the management entries inherited from the parent pom.
+     */
+    Map<DependencyType, List<Dependency>> getLocalDependencies() {
+        Map<DependencyType, List<Dependency>> local = new DependencyMap();
+        for (Map.Entry<DependencyType, List<Dependency>> entry : dependencies.entrySet()) {
+            List<Dependency> list = entry.getValue();
+            local.put(entry.getKey(), list instanceof ManagementList ? ((ManagementList) list).local : list);
+        }
+        return local;
+    }
+
+    private static Dependency copy(Dependency dependency) {
+        return dependency == null ? null : new Dependency(dependency);
+    }
+
+    private static List<Dependency> managementList(List<Dependency> list) {
+        if (list == null || list.isEmpty() || list instanceof ManagementList) {
+            // The empty lists of a DependencyMap are created with newDependencyList()
+            return list;
+        }
+        return new ManagementList(list, null);
+    }
+
+    /**
+     * Creates the list storing the dependencies of this type.
+     */
+    static List<Dependency> newDependencyList(DependencyType depType) {
+        List<Dependency> list = new ArrayList<Dependency>();
+        for (DependencyType managementList : MANAGEMENT_LISTS) {
+            if (managementList == depType) {
+                return new ManagementList(list, null);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a number changing with each modification of the list, or the size of the list
+     * if it doesn't count its modifications.
+     */
+    private static int changes(List<Dependency> list) {
+        return list instanceof ManagementList ? ((ManagementList) list).changes() : list.size();
+    }
+
+    /**
+     * Management list of a pom, made of the entries of the pom followed by the entries inherited
+     * from the parent pom and not overridden by the pom. It counts its modifications, so the
+     * index of the managed versions can tell when it is out of date.
+     *
+     * The inherited entries are read from the list of the parent, so a parent shared by many poms
+     * is not copied in each of them. The list is copied on write: before any modification of the
+     * inherited entries or of the size of the list, the inherited entries are copied in the list
+     * of the pom, which is then used alone.
+     */
+    private static class ManagementList extends AbstractList<Dependency> {
+
+        private List<Dependency> local;
+        private List<Dependency> inherited;
+        /** Indexes of the inherited entries not overridden, computed for a number of changes of the lists */
+        private int[] visible;
+        private int visibleForChanges;
+        private int sets;
+
+        private ManagementList(List<Dependency> local, List<Dependency> inherited) {
+            this.local = local;
+            this.inherited = inherited;
+        }
+
+        private int changes() {
+            // The entries of this pom are merged entries if the pom was merged with several parents
+            int localChanges = local instanceof ManagementList ? ((ManagementList) local).changes() : 0;
+            return modCount + sets + localChanges + (inherited == null ? 0 : POMInfo.changes(inherited));
+        }
+
+        private int[] visible() {
+            int changes = changes();
+            if (visible == null || visibleForChanges != changes) {
+                Set<String> keys = new HashSet<String>();
+                for (Dependency dependency: local) {
+                    keys.add(managementKey(dependency));
+                }
+                int[] indexes = new int[inherited.size()];
+                int count = 0;
+                for (int i = 0; i < indexes.length; i++) {
+                    if (keys.add(managementKey(inherited.get(i)))) {
+                        indexes[count++] = i;
+                    }
+                }
+                visible = count == indexes.length ? indexes : Arrays.copyOf(indexes, count);
+                visibleForChanges = changes;
+            }
+            return visible;
+        }
+
+        /**
+         * Copies the inherited entries in the local list.
+         */
+        private void copyInherited() {
+            if (inherited != null) {
+                List<Dependency> all = new ArrayList<Dependency>(size());
+                all.addAll(local);
+                for (int index : visible()) {
+                    all.add(new Dependency(inherited.get(index)));
+                }
+                local = all;
+                inherited = null;
+                visible = null;
+            }
+        }
+
+        @Override
+        public Dependency get(int index) {
+            if (index < local.size() || inherited == null) {
+                return local.get(index);
+            }
+            int[] indexes = visible();
+            if (index - local.size() >= indexes.length) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return inherited.get(indexes[index - local.size()]);
+        }
+
+        @Override
+        public int size() {
+            return local.size() + (inherited == null ? 0 : visible().length);
+        }
+
+        @Override
+        public Dependency set(int index, Dependency dependency) {
+            if (index >= local.size()) {
+                copyInherited();
+            }
+            sets++;
+            return local.set(index, dependency);
+        }
+
+        @Override
+        public void add(int index, Dependency dependency) {
+            copyInherited();
+            modCount++;
+            local.add(index, dependency);
+        }
+
+        @Override
+        public Dependency remove(int index) {
+            copyInherited();
+            modCount++;
+            return local.remove(index);
+        }
+    }
+
+    public static Map<DependencyType, List<Dependency>> initDependenciesMultiMap() {
+        return new DependencyMap();
     }
 
     public enum DependencyType {
@@ -20,19 +20,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
 import org.debian.maven.repo.POMInfo.DependencyType;
+import org.debian.maven.util.StringPool;
 
 /**
  * Reads relevant information from the POM.
@@ -42,24 +48,164 @@ import org.debian.maven.repo.POMInfo.DependencyType;
  */
 public class POMReader {
 
-    private static final List<String> READ_IGNORED_ELEMENTS = Arrays.asList(
+    private static final ElementSet READ_IGNORED_ELEMENTS = new ElementSet(
                 "distributionManagement", "ciManagement", "prerequisites", "exclusions",
                 "repositories", "pluginRepositories", "reports", "modelVersion");
-    private static final List<String> PLUGIN_IGNORED_ELEMENTS = Arrays.asList(
+    private static final ElementSet PLUGIN_IGNORED_ELEMENTS = new ElementSet(
                 "executions", "configuration", "goals", "reportSets" );
 
+    /**
+     * Sections of the pom which can be read by the partial reads. The sections are
+     * identified by the children of the project element.
+     */
+    public enum Section {
+        /** groupId, artifactId, version and packaging */
+        COORDINATES("groupId", "artifactId", "version", "packaging"),
+        PARENT("parent"),
+        PROPERTIES("properties"),
+        MODULES("modules"),
+        DEPENDENCY_MANAGEMENT("dependencyManagement"),
+        DEPENDENCIES("dependencies"),
+        /** The plugins and extensions of the build and reporting sections */
+        BUILD("build", "reporting"),
+        PROFILES("profiles");
+
+        private final String[] elements;
+
+        Section(String... elements) {
+            this.elements = elements;
+        }
+    }
+
+    /** Reads the whole pom */
+    public static final Set<Section> ALL_SECTIONS = Collections.unmodifiableSet(EnumSet.allOf(Section.class));
+
+    /** Reads the coordinates of the pom and of its parent, with the properties used to expand them */
+    public static final Set<Section> HEADER_SECTIONS = Collections.unmodifiableSet(
+            EnumSet.of(Section.COORDINATES, Section.PARENT, Section.PROPERTIES));
+
+    private static final Map<String, Section> SECTIONS_BY_ELEMENT = new HashMap<String, Section>();
+    static {
+        for (Section section : Section.values()) {
+            for (String element : section.elements) {
+                SECTIONS_BY_ELEMENT.put(element, section);
+            }
+        }
+    }
+
+    private static final POMCache CACHE = new POMCache(1024);
+
     protected final XMLInputFactory factory = XMLInputFactory.newInstance();
 
+    /** Pool sharing the coordinates of the dependencies read by this reader */
+    private StringPool stringPool = StringPool.bounded(10000);
+
+    private boolean useCache = false;
+
     public POMInfo readPom(File originalPom) throws XMLStreamException, FileNotFoundException {
+        return readPom(originalPom, ALL_SECTIONS);
+    }
+
+    /**
+     * Reads only the given sections of the pom, the file is closed as soon as
+     * all the sections have been read.
+     *
+     * When the cache is enabled, the poms read from files are kept in a cache shared
+     * by the readers, they are parsed again only when the file changes. A pom found
+     * in the cache may contain more sections than requested.
+     */
+    public POMInfo readPom(File originalPom, Set<Section> sections) throws XMLStreamException, FileNotFoundException {
+        POMInfo info;
+        if (useCache) {
+            info = CACHE.get(originalPom, sections);
+            if (info != null) {
+                return info;
+            }
+        }
         if (!originalPom.exists()) {
             System.err.println("Cannot find pom file " + originalPom.getAbsolutePath());
         }
-        return readPom(new FileReader(originalPom));
+        long length = originalPom.length();
+        long lastModified = originalPom.lastModified();
+        Reader reader = new FileReader(originalPom);
+        try {
+            info = readPom(factory.createXMLStreamReader(new BufferedReader(reader)), sections);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        if (useCache) {
+            CACHE.put(originalPom, length, lastModified, sections, info);
+        }
+        return info;
+    }
+
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * Sets the pool of the coordinates of the dependencies, to share it with other readers.
+     */
+    public void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    /**
+     * Enables the cache of the poms read from files, for the readers reading the same
+     * poms several times. It is disabled by default, as a scan of the repository reads
+     * each pom once and would only pay for the copies kept by the cache.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
+    /**
+     * Returns the cache of the poms read from files.
+     */
+    public static POMCache getCache() {
+        return CACHE;
     }
 
     public POMInfo readPom(Reader originalPom) throws XMLStreamException {
-        XMLStreamReader parser = factory.createXMLStreamReader(new BufferedReader(originalPom));
-        
+        return readPom(factory.createXMLStreamReader(new BufferedReader(originalPom)));
+    }
+
+    /**
+     * Reads the pom from the parser, until the end of the document.
+     */
+    public POMInfo readPom(XMLStreamReader parser) throws XMLStreamException {
+        return readPom(parser, ALL_SECTIONS);
+    }
+
+    /**
+     * Reads the given sections of the pom from the parser. The other children of the project
+     * element are skipped without collecting their text, and the parser stops once all
+     * the elements of the sections have been read.
+     *
+     * The coordinates inherited from the parent are only filled if the parent section is read,
+     * and the properties are only expanded with the properties of the pom if the properties
+     * section is read. A pom missing some of the elements of the sections is read until the end.
+     */
+    public POMInfo readPom(XMLStreamReader parser, Set<Section> sections) throws XMLStreamException {
+        boolean partial = !sections.containsAll(ALL_SECTIONS);
+        // Children of the project element remaining to read before stopping
+        Set<String> remainingElements = new HashSet<String>();
+        if (partial) {
+            for (Section section : sections) {
+                remainingElements.addAll(Arrays.asList(section.elements));
+            }
+        }
+        // Depth of the element skipped, 0 if the current element is read
+        int inSkippedElement = 0;
+
         // Stack of the XML path currently parsed. Most deepest XML element is first in the list.
         TreePath<String> path = new TreePath<String>();
 
@@ -68,8 +214,8 @@ public class POMReader {
         // However the POMTransformer depends on the ordering...
         List<String> modules = new ArrayList<String>();
 
-        Map<String, String> properties = new TreeMap<String, String>();
-        Map<DependencyType, List<Dependency>> dependencies = POMInfo.initDependenciesMultiMap();
+        Map<String, String> properties = new HashMap<String, String>();
+        DependencyMap dependencies = new DependencyMap();
         Dependency thisPom = new Dependency(Dependency.PROTO_JAR);
         Dependency parent = null;
         Dependency currentDependency = null;
@@ -79,18 +225,32 @@ public class POMReader {
         StringBuilder buffer = null;
 
         // First pass - collect version and parent information
+        parse:
         for (int event = parser.next(); event != XMLStreamConstants.END_DOCUMENT; event = parser.next()) {
+            if (inSkippedElement > 0) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    inSkippedElement++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    inSkippedElement--;
+                }
+                continue;
+            }
             switch (event) {
                 case XMLStreamConstants.START_ELEMENT: {
                     buffer = null;
                     element = parser.getLocalName();
+                    if (partial && path.size() == 1 && !sections.contains(SECTIONS_BY_ELEMENT.get(element))) {
+                        inSkippedElement = 1;
+                        element = null;
+                        break;
+                    }
                     path.add(element);
                     if (isReadIgnoredElement(element) ||
-                            (path.contains("plugin") && PLUGIN_IGNORED_ELEMENTS.contains(element)) ||
+                            (path.contains("plugin") && PLUGIN_IGNORED_ELEMENTS.contains(path.lastId())) ||
                             (path.contains("dependency") && "exclusions".equals(element)) ||
                             inIgnoredElement > 0) {
                         inIgnoredElement++;
-                    } else if ("dependency".equals(element) || "plugin".equals(element) || path.matches("extension")) {
+                    } else if ("dependency".equals(element) || "plugin".equals(element) || "extension".equals(element)) {
                         DependencyType depType = path.match();
                         if(depType != null) {
                             currentDependency = new Dependency(depType.dependencyPrototype());
@@ -150,6 +310,9 @@ public class POMReader {
                         }
                     }
                     
+                    if (partial && path.size() == 2 && remainingElements.remove(path.parent(0)) && remainingElements.isEmpty()) {
+                        break parse;
+                    }
                     path.remove();
                     if (inIgnoredElement > 0) {
                         inIgnoredElement--;
@@ -181,7 +344,7 @@ public class POMReader {
             thisPom.setVersion(parent.getVersion());
         }
 
-        Map<String, String> inferedProperties = new TreeMap<String, String>(properties);
+        Map<String, String> inferedProperties = new HashMap<String, String>();
         
         inferedProperties.put("pom.groupId", thisPom.getGroupId());
         inferedProperties.put("project.groupId", thisPom.getGroupId());
@@ -204,12 +367,16 @@ public class POMReader {
             inferedProperties.put("project.parent.version", parent.getVersion());
         }
 
-        expandProperties(thisPom, inferedProperties);
+        PropertyExpander expander = new PropertyExpander(properties, inferedProperties);
+        expandProperties(thisPom, expander);
+        if (parent != null) {
+            intern(parent);
+        }
 
         // the former code did not call expandProperties for EXTENSIONS
         for(List<Dependency> deplist : dependencies.values()) {
             for (Dependency dependency : deplist) {
-                expandProperties(dependency, inferedProperties);
+                expandProperties(dependency, expander);
             }
         }
 
@@ -223,6 +390,7 @@ public class POMReader {
         info.setThisPom(thisPom);
         info.setParent(parent);
         info.setModules(new ArrayList<String>(modules));
+        dependencies.trimToSize();
         info.setDependencies(dependencies);
         info.setProperties(properties);
         return info;
@@ -232,67 +400,106 @@ public class POMReader {
         return READ_IGNORED_ELEMENTS.contains(element);
     }
 
-    private void expandProperties(Dependency dependency, Map<String, String> inferedProperties) {
-        dependency.setGroupId(expandString(dependency.getGroupId(), inferedProperties));
-        dependency.setArtifactId(expandString(dependency.getArtifactId(), inferedProperties));
-        dependency.setType(expandString(dependency.getType(), inferedProperties));
-        dependency.setVersion(expandString(dependency.getVersion(), inferedProperties));
+    private void expandProperties(Dependency dependency, PropertyExpander expander) {
+        dependency.setGroupId(expander.expand(dependency.getGroupId()));
+        dependency.setArtifactId(expander.expand(dependency.getArtifactId()));
+        dependency.setType(expander.expand(dependency.getType()));
+        dependency.setVersion(expander.expand(dependency.getVersion()));
+        intern(dependency);
     }
 
-    private String expandString(String str, Map<String, String> inferedProperties) {
-        if (str == null) {
-            return null;
-        }
-        int pos;
-        while ((pos = str.indexOf("${")) >= 0) {
-            int end = str.indexOf('}', pos);
-            String property = str.substring(pos + 2, end);
-            if (inferedProperties.containsKey(property)) {
-                String endStr = "";
-                if (end + 1 < str.length()) {
-                    endStr = str.substring(end + 1);
-                }
-                str = str.substring(0, pos) + inferedProperties.get(property) + endStr;
-            } else {
-                break;
-            }
+    // The dependencies are built before the properties of the pom are read,
+    // so their coordinates can only be shared once they have been expanded
+    @SuppressWarnings("deprecation")
+    private void intern(Dependency dependency) {
+        dependency.setGroupId(stringPool.intern(dependency.getGroupId()));
+        dependency.setArtifactId(stringPool.intern(dependency.getArtifactId()));
+        dependency.setType(stringPool.intern(dependency.getType()));
+        dependency.setVersion(stringPool.intern(dependency.getVersion()));
+        dependency.setClassifier(stringPool.intern(dependency.getClassifier()));
+        if (dependency.isScopeDefined()) {
+            dependency.setScope(stringPool.intern(dependency.getScope()));
         }
-        return str;
     }
 
     static class TreePath<S> {
-        private LinkedList<S> path = new LinkedList<S>();
 
-        // forwarding functions to the inner LinkedList
-        public void add(S el) { path.addLast(el); }
-        public void remove() { path.removeLast(); }
-        public boolean contains(S el) { return path.contains(el); }
-        public int size() { return path.size(); }
-        public S get(int index) { return path.get(index); }
+        /** The compiled path patterns, by pattern string */
+        private static final Map<String, PathPattern> PATTERNS = new ConcurrentHashMap<String, PathPattern>();
 
-        public S parent(int generations) {
-            int index = (path.size() - 1) - generations;
-            return index >= 0 ? path.get(index) : null;
+        private static final DependencyType[] TYPES = DependencyType.values();
+
+        /** The patterns of the dependency types, by ordinal of DependencyType */
+        private static final PathPattern[] TYPE_PATTERNS = new PathPattern[TYPES.length];
+        static {
+            for (DependencyType depType : TYPES) {
+                TYPE_PATTERNS[depType.ordinal()] = compile(depType.pattern);
+            }
         }
 
-        private boolean matches(String patternString, boolean anchored) {
-            String[] patterns = patternString.split("/");
+        private final List<S> path = new ArrayList<S>();
 
-            if(anchored && patterns.length != path.size()) return false;
+        /** The ids of the elements of the path, as defined by ElementSet */
+        private int[] ids = new int[16];
 
-            int pathIndex = path.size() - patterns.length - 1;
-            if(pathIndex < -1) return false;
+        /**
+         * The state of the matching of the patterns of the dependency types, for each element of the path:
+         * bit i is set if the first i elements of the pattern match the end of the path up to this element.
+         */
+        private int[][] typeStates = new int[16][];
 
-            for (String pattern : patterns) {
-                ++pathIndex;
-                if ("*".equals(pattern)) {
-                    continue;
-                }
-                if (!pattern.equals(path.get(pathIndex))) {
-                    return false;
-                }
+        /** Number of occurrences in the path of each element, to answer contains() without scanning the path */
+        private final Map<S, int[]> counts = new HashMap<S, int[]>();
+
+        public void add(S el) {
+            int depth = path.size();
+            if (depth == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                typeStates = Arrays.copyOf(typeStates, typeStates.length * 2);
             }
-            return true;
+            ids[depth] = el instanceof String ? ElementSet.id((String) el) : -1;
+            advanceTypeStates(depth, el);
+            path.add(el);
+            int[] count = counts.get(el);
+            if (count == null) {
+                count = new int[1];
+                counts.put(el, count);
+            }
+            count[0]++;
+        }
+
+        public void remove() {
+            counts.get(path.remove(path.size() - 1))[0]--;
+        }
+
+        public boolean contains(S el) {
+            int[] count = counts.get(el);
+            return count != null && count[0] > 0;
+        }
+
+        public int size() { return path.size(); }
+        public S get(int index) { return path.get(index); }
+
+        /**
+         * Returns the id of the element at this index, to look it up in an ElementSet.
+         */
+        public int id(int index) {
+            if (index >= path.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + path.size());
+            }
+            return ids[index];
+        }
+
+        /**
+         * Returns the id of the last element of the path, to look it up in an ElementSet.
+         */
+        public int lastId() {
+            return id(path.size() - 1);
+        }
+
+        public S parent(int generations) {
+            int index = (path.size() - 1) - generations;
+            return index >= 0 ? path.get(index) : null;
         }
 
         /**
@@ -303,24 +510,110 @@ public class POMReader {
          * the root.
          * 
          * A pattern that starts with a slash is also anchored at the start.
+         *
+         * The patterns are compiled on their first use.
          * 
          * @param patternString
          */
         public boolean matches(String patternString) {
-            if(patternString.startsWith("/")) {
-                return matches(patternString.substring(1), true);
-            } else {
-                return matches(patternString, false);
-            }
+            return compile(patternString).matches(path);
         }
-        
+
+        /**
+         * Returns the first dependency type whose pattern matches the path, or null.
+         * The patterns are matched as the path changes, in add().
+         */
         public DependencyType match() {
-            for(DependencyType depType : DependencyType.values()) {
-                if(matches(depType.pattern)) {
-                    return depType;
+            if (path.isEmpty()) {
+                return null;
+            }
+            int[] states = typeStates[path.size() - 1];
+            for (int i = 0; i < TYPES.length; i++) {
+                if ((states[i] & (1 << TYPE_PATTERNS[i].elements.length)) != 0) {
+                    return TYPES[i];
                 }
             }
             return null;
         }
+
+        /**
+         * Computes the state of the patterns of the dependency types for the element added at this depth,
+         * from the state of the parent element.
+         */
+        private void advanceTypeStates(int depth, S el) {
+            int[] parentStates = depth == 0 ? null : typeStates[depth - 1];
+            int[] states = typeStates[depth];
+            if (states == null) {
+                states = new int[TYPES.length];
+                typeStates[depth] = states;
+            }
+            for (int i = 0; i < TYPES.length; i++) {
+                PathPattern pattern = TYPE_PATTERNS[i];
+                int matched = parentStates == null ? 0 : parentStates[i];
+                // An anchored pattern starts at the root only, the other patterns can start at any element
+                if (!pattern.anchored || depth == 0) {
+                    matched |= 1;
+                }
+                int state = 0;
+                while (matched != 0) {
+                    int length = Integer.numberOfTrailingZeros(matched);
+                    matched &= matched - 1;
+                    if (length < pattern.elements.length && pattern.matches(length, el)) {
+                        state |= 1 << (length + 1);
+                    }
+                }
+                states[i] = state;
+            }
+        }
+
+        private static PathPattern compile(String patternString) {
+            PathPattern pattern = PATTERNS.get(patternString);
+            if (pattern == null) {
+                pattern = new PathPattern(patternString);
+                PATTERNS.put(patternString, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * Path pattern split in elements, null for the * wildcard.
+     */
+    private static class PathPattern {
+        private final String[] elements;
+        private final boolean anchored;
+
+        private PathPattern(String patternString) {
+            anchored = patternString.startsWith("/");
+            elements = (anchored ? patternString.substring(1) : patternString).split("/");
+            for (int i = 0; i < elements.length; i++) {
+                if ("*".equals(elements[i])) {
+                    elements[i] = null;
+                }
+            }
+        }
+
+        /**
+         * Does the element of the pattern at this index match the element of a path?
+         */
+        private boolean matches(int index, Object element) {
+            return elements[index] == null || elements[index].equals(element);
+        }
+
+        private boolean matches(List<?> path) {
+            if (anchored && elements.length != path.size()) {
+                return false;
+            }
+            int offset = path.size() - elements.length;
+            if (offset < 0) {
+                return false;
+            }
+            for (int i = elements.length - 1; i >= 0; i--) {
+                if (elements[i] != null && !elements[i].equals(path.get(offset + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
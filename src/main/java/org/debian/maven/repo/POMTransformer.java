@@ -23,6 +23,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 import java.util.*;
 import java.util.logging.Level;
@@ -36,6 +37,8 @@ import javax.xml.stream.XMLStreamWriter;
 import org.debian.maven.cliargs.ArgumentsMap;
 import org.debian.maven.repo.POMInfo.DependencyType;
 import org.debian.maven.util.Strings;
+import org.debian.maven.util.TeeXMLStreamWriter;
+import org.debian.maven.util.XMLEventBuffer;
 import org.debian.maven.util.XMLWriterWrapper;
 
 import static org.debian.maven.repo.POMInfo.DependencyType.*;
@@ -49,10 +52,10 @@ import static org.debian.maven.repo.DependencyRuleSetFiles.RulesType.*;
 public class POMTransformer extends POMReader {
 
     private static final Logger log = Logger.getLogger(POMTransformer.class.getName());
-    private static final List<String> WRITE_IGNORED_ELEMENTS = Arrays.asList("modelVersion", "parent");
-    private static final List<String> DEBIAN_BUILD_IGNORED_ELEMENTS = Arrays.asList("distributionManagement", "repositories", "pluginRepositories");
-    private static final List<String> DEBIAN_DOC_IGNORED_ELEMENTS = Arrays.asList("reports", "reporting", "site");
-    private static final List<String> INFO_ELEMENTS = Arrays.asList("groupId", "artifactId", "packaging", "version");
+    private static final ElementSet WRITE_IGNORED_ELEMENTS = new ElementSet("modelVersion", "parent");
+    private static final ElementSet DEBIAN_BUILD_IGNORED_ELEMENTS = new ElementSet("distributionManagement", "repositories", "pluginRepositories");
+    private static final ElementSet DEBIAN_DOC_IGNORED_ELEMENTS = new ElementSet("reports", "reporting", "site");
+    private static final ElementSet INFO_ELEMENTS = new ElementSet("groupId", "artifactId", "packaging", "version");
     private DependencyRuleSetFiles depRules = new DependencyRuleSetFiles();
     private Map<File, Set<String>> ignoredModules = new HashMap<File, Set<String>>();
     private Repository repository;
@@ -63,6 +66,11 @@ public class POMTransformer extends POMReader {
     private boolean fixVersions = true;
     private ListOfPOMs listOfPOMs;
 
+    public POMTransformer() {
+        // The headers of the poms are read again by keepPomVersion() and keepParentVersion()
+        setUseCache(true);
+    }
+
     public void setRulesFiles(DependencyRuleSetFiles rulesFiles) {
         this.depRules = rulesFiles;
     }
@@ -168,14 +176,14 @@ public class POMTransformer extends POMReader {
     }
 
     public void keepPomVersion(File pomFile) throws XMLStreamException, FileNotFoundException {
-        Dependency pom = readPom(pomFile).getThisPom();
+        Dependency pom = readPom(pomFile, HEADER_SECTIONS).getThisPom();
         depRules.get(RULES).add(new DependencyRule(pom.getGroupId() + " " + pom.getArtifactId() + " " + pom.getType() + " " + pom.getVersion()));
     }
 
     public boolean keepParentVersion(File pomFile, boolean noParent, boolean keepPomVersion) throws Exception {
         boolean keepParentVersion = !noParent && keepPomVersion;
         if (keepParentVersion && repository != null) {
-            POMInfo pom = readPom(pomFile);
+            POMInfo pom = readPom(pomFile, HEADER_SECTIONS);
             if (pom.getThisPom().isPom() && pom.getParent() != null) {
                 keepParentVersion = listOfPOMs.contains(pomFile) ||
                         repository.searchMatchingPOM(pom.getParent()) == null;
@@ -214,19 +222,48 @@ public class POMTransformer extends POMReader {
     public POMInfo transformPom(File originalPom, File targetPom,
             boolean noParent, boolean hasPackageVersion, boolean keepPomVersion, boolean keepParentVersion, String setVersion, String debianPackage,
             boolean ignoreRegisterErrors) throws XMLStreamException, IOException {
+        return transformPom(originalPom, targetPom, null, noParent, hasPackageVersion, keepPomVersion, keepParentVersion, setVersion, debianPackage, ignoreRegisterErrors);
+    }
+
+    /**
+     * Transforms the POM and writes the result to targetPom and, if keptVersionTargetPom is not null,
+     * writes in the same pass a second copy of the result keeping the original version of the POM.
+     * The POM is parsed only once for both outputs.
+     */
+    public POMInfo transformPom(File originalPom, File targetPom, File keptVersionTargetPom,
+            boolean noParent, boolean hasPackageVersion, boolean keepPomVersion, boolean keepParentVersion, String setVersion, String debianPackage,
+            boolean ignoreRegisterErrors) throws XMLStreamException, IOException {
 
         if (targetPom.getParentFile() != null) {
             targetPom.getParentFile().mkdirs();
         }
+        if (keptVersionTargetPom != null && keptVersionTargetPom.getParentFile() != null) {
+            keptVersionTargetPom.getParentFile().mkdirs();
+        }
 
         XMLOutputFactory outFactory = XMLOutputFactory.newInstance();
         Writer out = null;
+        Writer keptVersionOut = null;
         try {
-            // First pass - read information for this POM
-            POMInfo original = readPom(originalPom);
+            // First pass - read information for this POM, recording the XML events for the second pass
+            XMLEventBuffer events = new XMLEventBuffer();
+            POMInfo original;
+            Reader originalReader = new FileReader(originalPom);
+            try {
+                original = readPom(events.record(factory.createXMLStreamReader(new BufferedReader(originalReader))));
+            } finally {
+                try {
+                    originalReader.close();
+                } catch (IOException ex) {
+                    log.log(Level.SEVERE, null, ex);
+                }
+            }
 
             if (setVersion != null) {
-                original.getThisPom().setVersion(setVersion);
+                // Don't change the dependency shared with the rules and the repository
+                Dependency thisPom = new Dependency(original.getThisPom());
+                thisPom.setVersion(setVersion);
+                original.setThisPom(thisPom);
             }
 
             if (keepParentVersion && original.getParent() != null) {
@@ -235,7 +272,7 @@ public class POMTransformer extends POMReader {
                     + original.getParent().getArtifactId() + " * * * *"));
             }
 
-            Set<DependencyRule> allRules = new TreeSet<DependencyRule>(depRules.get(RULES).getRules());
+            Set<DependencyRule> allRules = new IndexedRuleSet(depRules.get(RULES).getRules());
             allRules.addAll(depRules.get(AUTOMATIC).getRules());
             POMInfo info = original.newPOMFromRules(allRules, repository);
             if (hasPackageVersion) {
@@ -278,9 +315,16 @@ public class POMTransformer extends POMReader {
             Dependency parentDependency = null;
             String element = null;
             boolean afterText = false;
-            XMLStreamReader parser = factory.createXMLStreamReader(new BufferedReader(new FileReader(originalPom)));
+            XMLStreamReader parser = events.replay();
             out = new BufferedWriter(new FileWriter(targetPom));
-            XMLStreamWriter writer = outFactory.createXMLStreamWriter(out);
+            XMLStreamWriter targetWriter = outFactory.createXMLStreamWriter(out);
+            XMLStreamWriter keptVersionWriter = null;
+            XMLStreamWriter writer = targetWriter;
+            if (keptVersionTargetPom != null) {
+                keptVersionOut = new BufferedWriter(new FileWriter(keptVersionTargetPom));
+                keptVersionWriter = outFactory.createXMLStreamWriter(keptVersionOut);
+                writer = new TeeXMLStreamWriter(targetWriter, keptVersionWriter);
+            }
             XMLWriterWrapper writerWrapper = new XMLWriterWrapper(writer);
 
             writer.writeStartDocument("UTF-8", "1.0");
@@ -290,7 +334,7 @@ public class POMTransformer extends POMReader {
                     case XMLStreamConstants.START_ELEMENT: {
                         element = parser.getLocalName();
                         path.add(element);
-                        if (isWriteIgnoredElement(element, path, dependency) || (path.size() == 2 && INFO_ELEMENTS.contains(element))) {
+                        if (isWriteIgnoredElement(element, path, dependency) || (path.size() == 2 && INFO_ELEMENTS.contains(path.lastId()))) {
                             inIgnoredElement++;
                             if ("version".equals(element)) {
                                 sawVersion = true;
@@ -358,7 +402,7 @@ public class POMTransformer extends POMReader {
                             copyNsAndAttributes(parser, writer);
 
                             if (path.matches("/project")) {
-                                copyAndFillProjectHeader(parser, writerWrapper, keepPomVersion, info, original, parent, debianPackage);
+                                copyAndFillProjectHeader(parser, writerWrapper, targetWriter, keptVersionWriter, keepPomVersion, info, original, parent, debianPackage);
                             } else if (path.matches("/project/properties")) {
                                 inProperties++;
                             } else if (path.matches("/project/properties/*")) {
@@ -517,12 +561,20 @@ public class POMTransformer extends POMReader {
             } catch (IOException ex) {
                 log.log(Level.SEVERE, null, ex);
             }
+            try {
+                if (keptVersionOut != null) {
+                    keptVersionOut.close();
+                }
+            } catch (IOException ex) {
+                log.log(Level.SEVERE, null, ex);
+            }
         }
     }
 
     protected boolean shouldWriteRelativePath() { return true; }
 
-    private void copyAndFillProjectHeader(XMLStreamReader parser, XMLWriterWrapper writerWrapper, boolean keepPomVersion, POMInfo info, POMInfo original, Dependency parent, String debianPackage) throws XMLStreamException {
+    private void copyAndFillProjectHeader(XMLStreamReader parser, XMLWriterWrapper writerWrapper,
+            XMLStreamWriter targetWriter, XMLStreamWriter keptVersionWriter, boolean keepPomVersion, POMInfo info, POMInfo original, Dependency parent, String debianPackage) throws XMLStreamException {
         XMLStreamWriter writer = writerWrapper.getWriter();
         if (parser.getNamespaceCount() == 0) {
             writer.writeNamespace(null, "http://maven.apache.org/POM/4.0.0");
@@ -535,9 +587,16 @@ public class POMTransformer extends POMReader {
         writerWrapper
             .writeFilledElement("modelVersion", "4.0.0", 1)
             .writeFilledElement("groupId", info.getThisPom().getGroupId(), 1)
-            .writeFilledElement("artifactId", info.getThisPom().getArtifactId(), 1)
-            .writeFilledElement("version", keepPomVersion ? info.getOriginalVersion() : info.getThisPom().getVersion(), 1)
-            .writeFilledElement("packaging", info.getThisPom().getType(), 1);
+            .writeFilledElement("artifactId", info.getThisPom().getArtifactId(), 1);
+        String version = keepPomVersion ? info.getOriginalVersion() : info.getThisPom().getVersion();
+        if (keptVersionWriter == null) {
+            writerWrapper.writeFilledElement("version", version, 1);
+        } else {
+            // The only difference between the two outputs
+            new XMLWriterWrapper(targetWriter).writeFilledElement("version", version, 1);
+            new XMLWriterWrapper(keptVersionWriter).writeFilledElement("version", info.getOriginalVersion(), 1);
+        }
+        writerWrapper.writeFilledElement("packaging", info.getThisPom().getType(), 1);
 
         if (parent != null) {
             writerWrapper.indent(1);
@@ -606,9 +665,10 @@ public class POMTransformer extends POMReader {
 //        if (WRITE_IGNORED_ELEMENTS.contains(element)) {
 //            System.out.println("Write ignored " + element + " " + printPath(path) + " for " + dependency);
 //        }
-        return path.size() == 1 && (isDebianBuild && DEBIAN_BUILD_IGNORED_ELEMENTS.contains(element))
-                || (isBuildWithoutDoc && DEBIAN_DOC_IGNORED_ELEMENTS.contains(element))
-                || WRITE_IGNORED_ELEMENTS.contains(element);
+        int elementId = path.lastId();
+        return path.size() == 1 && (isDebianBuild && DEBIAN_BUILD_IGNORED_ELEMENTS.contains(elementId))
+                || (isBuildWithoutDoc && DEBIAN_DOC_IGNORED_ELEMENTS.contains(elementId))
+                || WRITE_IGNORED_ELEMENTS.contains(elementId);
     }
 
 //    String printPath(List path) {
@@ -654,8 +714,9 @@ public class POMTransformer extends POMReader {
         }
     }
 
-    protected void writeMissingProperties(XMLWriterWrapper writerWrapper, int inLevel, TreeMap<String, String> properties, Set<String> visitedProperties) throws XMLStreamException {
-        for (Map.Entry<String, String> entry: properties.entrySet()) {
+    protected void writeMissingProperties(XMLWriterWrapper writerWrapper, int inLevel, Map<String, String> properties, Set<String> visitedProperties) throws XMLStreamException {
+        // Write the properties sorted by name
+        for (Map.Entry<String, String> entry: new TreeMap<String, String>(properties).entrySet()) {
             String property = entry.getKey();
             if (!visitedProperties.contains(property)) {
                 writerWrapper.writeFilledOrEmpty(property, entry.getValue(), inLevel + 1);
@@ -663,6 +724,10 @@ public class POMTransformer extends POMReader {
         }
     }
 
+    public boolean isVerbose() {
+        return verbose;
+    }
+
     public void setVerbose(boolean verbose) {
         this.verbose = verbose;
         if (listOfPOMs != null) {
@@ -717,6 +782,9 @@ public class POMTransformer extends POMReader {
             System.out.println("  -m<repo root>--maven-repo=<repo root>: location of the Maven repository,");
             System.out.println("    used to force the versions of the Maven plugins used in the current");
             System.out.println("    POM file with the versions found in the repository");
+            System.out.println("  --maven-repo-index=<file>: index of the Maven repository, created after");
+            System.out.println("    the first scan of the repository and used as long as the repository");
+            System.out.println("    is not modified, to avoid reading all the POM files of the repository");
             System.out.println("");
             System.out.println("Arguments:");
             System.out.println("  poms: location of file containing the list of POM files to process.");
@@ -746,6 +814,7 @@ public class POMTransformer extends POMReader {
 
         String setVersion = argsMap.getValue("set-version", "e", null);
         File mavenRepo = argsMap.getFile("maven-repo", "m", null);
+        File mavenRepoIndex = argsMap.getFile("maven-repo-index", null, null);
 
         transformer.setVerbose(verbose);
 
@@ -775,6 +844,7 @@ public class POMTransformer extends POMReader {
 
         if (mavenRepo != null) {
             Repository repository = new Repository(mavenRepo);
+            repository.setIndexFile(mavenRepoIndex);
             transformer.setRepository(repository);
             transformer.usePluginVersionsFromRepository();
         }
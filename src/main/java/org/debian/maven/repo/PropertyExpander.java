@@ -0,0 +1,108 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands the ${property} references found in the values of a pom.
+ *
+ * The properties referenced in the value of a property are expanded as well. A reference to
+ * an unknown property, or to a property whose value refers back to itself, is kept as is.
+ * The expanded values of the properties and of the values are remembered, so an expander
+ * should be used for one pom only.
+ */
+class PropertyExpander {
+
+    private final Map<String, String> properties;
+    private final Map<String, String> overrides;
+
+    /** Expanded values of the properties, null for the unknown properties */
+    private final Map<String, String> expandedProperties = new HashMap<String, String>();
+    /** Expanded values, by their original value */
+    private final Map<String, String> expandedValues = new HashMap<String, String>();
+    /** Properties being expanded, to detect the cycles */
+    private final Set<String> expanding = new HashSet<String>();
+
+    /**
+     * @param properties the properties of the pom
+     * @param overrides the properties taking precedence over the properties of the pom,
+     *                  like project.version
+     */
+    PropertyExpander(Map<String, String> properties, Map<String, String> overrides) {
+        this.properties = properties;
+        this.overrides = overrides;
+    }
+
+    String expand(String value) {
+        if (value == null || value.indexOf("${") < 0) {
+            return value;
+        }
+        String expanded = expandedValues.get(value);
+        if (expanded == null) {
+            StringBuilder sb = new StringBuilder(value.length() + 16);
+            append(value, sb);
+            expanded = sb.toString();
+            expandedValues.put(value, expanded);
+        }
+        return expanded;
+    }
+
+    private void append(String value, StringBuilder sb) {
+        int start = 0;
+        int pos;
+        while ((pos = value.indexOf("${", start)) >= 0) {
+            int end = value.indexOf('}', pos + 2);
+            if (end < 0) {
+                break;
+            }
+            sb.append(value, start, pos);
+            String propertyValue = expandProperty(value.substring(pos + 2, end));
+            if (propertyValue != null) {
+                sb.append(propertyValue);
+            } else {
+                sb.append(value, pos, end + 1);
+            }
+            start = end + 1;
+        }
+        sb.append(value, start, value.length());
+    }
+
+    private String expandProperty(String property) {
+        String expanded = expandedProperties.get(property);
+        if (expanded != null || expandedProperties.containsKey(property)) {
+            return expanded;
+        }
+        String value = overrides.containsKey(property) ? overrides.get(property) : properties.get(property);
+        if (value == null || !expanding.add(property)) {
+            return null;
+        }
+        if (value.indexOf("${") >= 0) {
+            StringBuilder sb = new StringBuilder(value.length() + 16);
+            append(value, sb);
+            expanded = sb.toString();
+        } else {
+            expanded = value;
+        }
+        expanding.remove(property);
+        expandedProperties.put(property, expanded);
+        return expanded;
+    }
+}
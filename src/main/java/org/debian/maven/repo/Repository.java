@@ -16,26 +16,43 @@
 
 package org.debian.maven.repo;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.debian.maven.repo.POMInfo.DependencyType;
+import org.debian.maven.util.StringPool;
 
 import static org.debian.maven.repo.DependencyRuleSet.*;
 
@@ -48,32 +65,91 @@ public class Repository {
 
     private static final Logger log = Logger.getLogger(Repository.class.getName());
 
+    private static final int INDEX_MAGIC = 0x4d485249;
+    private static final int INDEX_VERSION = 2;
+    private static final int INDEX_HEADER_SIZE = 24;
+    private static final int INDEX_DIRECTORY_SIZE = 12;
+    private static final int INDEX_POM_SIZE = 56;
+    private static final int INDEX_PLUGIN = 1;
+    private static final int INDEX_HAS_PARENT = 2;
+    private static final int INDEX_RESOLVED = 4;
+    private static final int INDEX_MISSING_PARENT = 8;
+    private static final int INDEX_PARENT_CYCLE = 16;
+
     /** The base directory of the repository typically (/usr/share/maven-repo) */
     private File baseDir;
 
     private Map<File, POMInfo> unresolvedPoms = new HashMap<File, POMInfo>();
 
     /** The dependency (groupId+artifactId+version+type) to pom mapping */
-    private Map<Dependency, POMInfo> dep2info = new HashMap<Dependency, POMInfo>();
+    private Map<Coordinate, POMInfo> dep2info = new HashMap<Coordinate, POMInfo>();
 
     /** The pom files specifying a parent pom not found in the repository */
     private Map<File, POMInfo> pomsWithMissingParent = new HashMap<File, POMInfo>();
 
+    /** The pom files whose parents form a cycle */
+    private Map<File, POMInfo> pomsWithParentCycle = new HashMap<File, POMInfo>();
+
     /** The pom files specifying a plugin or a dependency without version */
     private Map<File, POMInfo> pomsWithMissingVersions = new HashMap<File, POMInfo>();
     
     /** The resolved poms, that is the poms with a resolved parent */
     private Map<File, POMInfo> resolvedPoms = new HashMap<File, POMInfo>();
 
+    /** The values of resolvedPoms, to check quickly if a parent pom is resolved */
+    private Set<POMInfo> resolvedPomInfos = Collections.newSetFromMap(new IdentityHashMap<POMInfo, Boolean>());
+
     /** The Maven super pom defining the default plugins */
     private POMInfo superPom;
 
+    /** The poms by groupId:artifactId */
+    private Map<String, List<POMInfo>> pomsByGroupAndArtifact = new HashMap<String, List<POMInfo>>();
+
+    /**
+     * The rules published by the poms, by the literal groupId:artifactId matched by the rule,
+     * with '*' for the generic part of the rule
+     */
+    private Map<String, List<PublishedRule>> publishedRules = new HashMap<String, List<PublishedRule>>();
+
+    /** The value of the debian.mavenRules property used to index the published rules of each indexed pom */
+    private Map<POMInfo, String> indexedRulesSource = new IdentityHashMap<POMInfo, String>();
+
+    /** The poms registered with registerPom(), their published rules can be defined after the registration */
+    private Set<POMInfo> registeredPoms = Collections.newSetFromMap(new IdentityHashMap<POMInfo, Boolean>());
+
+    /** Pool sharing the coordinates of the poms of the repository between the poms */
+    private final StringPool stringPool = StringPool.weak();
+
     /** The parser used to read the pom files */
-    private POMReader pomReader = new POMReader();
+    private POMReader pomReader = newPOMReader();
     
+    /** Number of threads parsing the poms during the scan, 1 to parse them one after the other */
+    private int scanThreads = 1;
+
+    // Number of entries in the top sections of the report
+    private int reportTopCount = 10;
+
     /** Tells if the directory of the repository has already been scanned */
     private boolean scanned = false;
 
+    /** The directories visited by the last scan, used to validate the index */
+    private List<File> scannedDirectories = new ArrayList<File>();
+
+    /** The index file used by scanOnce(), or null */
+    private File indexFile;
+
+    /** The poms loaded from the index and not parsed yet, with their file */
+    private Map<POMInfo, File> indexedPoms = new IdentityHashMap<POMInfo, File>();
+
+    // Manifest of the poms found by the previous scan, to parse only the poms changed since
+    private File manifestFile;
+
+    // Number of pom files parsed by the last scan
+    private int parsedPomCount;
+
+    // Graph of the dependencies between the artifacts, built on demand
+    private DependencyGraph dependencyGraph;
+
     public Repository(File baseDir) {
         this.baseDir = baseDir;
         
@@ -113,7 +189,45 @@ public class Repository {
      * @param dependency
      */
     public POMInfo getPOM(Dependency dependency) {
-        return dep2info.get(dependency);
+        return load(dep2info.get(dependency.getCoordinate()));
+    }
+
+    /**
+     * Sets the index file used by scanOnce() to avoid parsing all the poms of the repository.
+     * The index is created after the first scan, and is ignored when the content of the
+     * repository has changed since.
+     */
+    public void setIndexFile(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Sets the manifest file used by scan() to parse only the poms changed since the previous scan.
+     * The manifest records the size, the modification time, the checksum and the content of
+     * each pom, and is updated after each scan.
+     */
+    public void setManifestFile(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Sets the number of threads used to parse the poms during the scan.
+     * The poms are still registered in the order of the sequential scan, so the result
+     * of the scan doesn't depend on the number of threads.
+     */
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = Math.max(1, scanThreads);
+    }
+
+    /**
+     * Sets the number of poms and of missing dependencies listed in the top sections of the report.
+     */
+    public void setReportTopCount(int reportTopCount) {
+        this.reportTopCount = Math.max(0, reportTopCount);
+    }
+
+    protected int getParsedPomCount() {
+        return parsedPomCount;
     }
 
     protected Map<File, POMInfo> getUnresolvedPoms() {
@@ -124,6 +238,10 @@ public class Repository {
         return pomsWithMissingParent;
     }
 
+    protected Map<File, POMInfo> getPomsWithParentCycle() {
+        return pomsWithParentCycle;
+    }
+
     protected Map<File, POMInfo> getPomsWithMissingVersions() {
         return pomsWithMissingVersions;
     }
@@ -153,25 +271,44 @@ public class Repository {
             return pom;
         }
 
+        refreshPublishedRules();
+
         Map<DependencyRule, POMInfo> potentialMatches = new TreeMap<DependencyRule, POMInfo>();
-        for (POMInfo testPom : getAllPoms()) {
-            Set<DependencyRule> rules = testPom.getPublishedRules();
-            rules.add(MAVEN_PLUGINS_KEEP_VERSION_RULE);
-            rules.add(TO_DEBIAN_VERSION_RULE);
-            
-            for (DependencyRule rule : rules) {
-                if (rule.matches(dependency) && rule.apply(dependency).equals(testPom.getThisPom())) {
-                    potentialMatches.put(rule, testPom);
+
+        // The default rules keep the groupId and the artifactId of the dependency
+        List<POMInfo> versions = pomsByGroupAndArtifact.get(key(dependency.getGroupId(), dependency.getArtifactId()));
+        if (versions != null) {
+            for (POMInfo testPom : versions) {
+                addPotentialMatch(potentialMatches, MAVEN_PLUGINS_KEEP_VERSION_RULE, testPom, dependency);
+                addPotentialMatch(potentialMatches, TO_DEBIAN_VERSION_RULE, testPom, dependency);
+            }
+        }
+
+        String[] keys = { key(dependency.getGroupId(), dependency.getArtifactId()), key(dependency.getGroupId(), null),
+                key(null, dependency.getArtifactId()), key(null, null) };
+        for (String key : keys) {
+            List<PublishedRule> rules = publishedRules.get(key);
+            if (rules != null) {
+                for (PublishedRule publishedRule : rules) {
+                    addPotentialMatch(potentialMatches, publishedRule.rule, publishedRule.pom, dependency);
                 }
             }
         }
+
         if (!potentialMatches.isEmpty()) {
             // Return the best match
-            return potentialMatches.values().iterator().next();
+            return load(potentialMatches.values().iterator().next());
         }
         return null;
     }
 
+    private static void addPotentialMatch(Map<DependencyRule, POMInfo> potentialMatches, DependencyRule rule,
+                                          POMInfo testPom, Dependency dependency) {
+        if (rule.matches(dependency) && rule.apply(dependency).equals(testPom.getThisPom())) {
+            potentialMatches.put(rule, testPom);
+        }
+    }
+
     public List<POMInfo> searchMatchingPOMsIgnoreVersion(Dependency dependency) {
         List<POMInfo> result = new ArrayList<POMInfo>();
         POMInfo pom = searchMatchingPOM(dependency);
@@ -180,59 +317,245 @@ public class Repository {
             return result;
         }
 
-        for (POMInfo testPom : resolvedPoms.values()) {
-            if (testPom.getThisPom().equalsIgnoreVersion(dependency)) {
-                result.add(testPom);
+        List<POMInfo> versions = pomsByGroupAndArtifact.get(key(dependency.getGroupId(), dependency.getArtifactId()));
+        if (versions != null) {
+            for (POMInfo testPom : new ArrayList<POMInfo>(versions)) {
+                if (resolvedPomInfos.contains(testPom) && testPom.getThisPom().equalsIgnoreVersion(dependency)) {
+                    result.add(load(testPom));
+                }
             }
         }
         return result;
     }
 
+    private static String key(String groupId, String artifactId) {
+        return (groupId == null ? "*" : groupId) + ":" + (artifactId == null ? "*" : artifactId);
+    }
+
+    /**
+     * Adds the pom to the indexes used to search the poms.
+     * This method must be called before the pom is added to resolvedPoms or unresolvedPoms.
+     */
+    private void indexPom(File file, POMInfo pomInfo) {
+        POMInfo previous = resolvedPoms.get(file);
+        if (previous == null) {
+            previous = unresolvedPoms.get(file);
+        }
+        if (previous != null && previous != pomInfo) {
+            unindexPom(previous);
+        }
+
+        dep2info.put(pomInfo.getThisPom().getCoordinate(), pomInfo);
+        dependencyGraph = null;
+        if (!indexedRulesSource.containsKey(pomInfo)) {
+            String key = key(pomInfo.getThisPom().getGroupId(), pomInfo.getThisPom().getArtifactId());
+            List<POMInfo> versions = pomsByGroupAndArtifact.get(key);
+            if (versions == null) {
+                versions = new ArrayList<POMInfo>();
+                pomsByGroupAndArtifact.put(key, versions);
+            }
+            versions.add(pomInfo);
+            indexPublishedRules(pomInfo);
+        }
+    }
+
+    private void unindexPom(POMInfo pomInfo) {
+        if (!indexedRulesSource.containsKey(pomInfo)) {
+            return;
+        }
+        List<POMInfo> versions = pomsByGroupAndArtifact.get(key(pomInfo.getThisPom().getGroupId(), pomInfo.getThisPom().getArtifactId()));
+        if (versions != null) {
+            for (Iterator<POMInfo> i = versions.iterator(); i.hasNext(); ) {
+                if (i.next() == pomInfo) {
+                    i.remove();
+                }
+            }
+        }
+        unindexPublishedRules(pomInfo);
+        indexedRulesSource.remove(pomInfo);
+        registeredPoms.remove(pomInfo);
+    }
+
+    private void indexPublishedRules(POMInfo pomInfo) {
+        String source = pomInfo.getProperties() == null ? null : pomInfo.getProperties().get("debian.mavenRules");
+        indexedRulesSource.put(pomInfo, source);
+        for (DependencyRule rule : POMInfo.parsePublishedRules(source)) {
+            String key = key(rule.getGroupRule().getLiteral(), rule.getArtifactRule().getLiteral());
+            List<PublishedRule> rules = publishedRules.get(key);
+            if (rules == null) {
+                rules = new ArrayList<PublishedRule>();
+                publishedRules.put(key, rules);
+            }
+            rules.add(new PublishedRule(rule, pomInfo));
+        }
+    }
+
+    private void unindexPublishedRules(POMInfo pomInfo) {
+        for (DependencyRule rule : POMInfo.parsePublishedRules(indexedRulesSource.get(pomInfo))) {
+            List<PublishedRule> rules = publishedRules.get(key(rule.getGroupRule().getLiteral(), rule.getArtifactRule().getLiteral()));
+            if (rules != null) {
+                for (Iterator<PublishedRule> i = rules.iterator(); i.hasNext(); ) {
+                    if (i.next().pom == pomInfo) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the published rules of the registered poms, as POMTransformer
+     * defines them after registering the pom.
+     */
+    private void refreshPublishedRules() {
+        for (POMInfo pomInfo : registeredPoms) {
+            String source = pomInfo.getProperties() == null ? null : pomInfo.getProperties().get("debian.mavenRules");
+            String indexedSource = indexedRulesSource.get(pomInfo);
+            if (source == null ? indexedSource != null : !source.equals(indexedSource)) {
+                unindexPublishedRules(pomInfo);
+                indexPublishedRules(pomInfo);
+            }
+        }
+    }
+
     public void scanOnce() {
         if (!scanned) {
+            if (indexFile != null && loadIndex(indexFile)) {
+                return;
+            }
             scan();
+            if (indexFile != null) {
+                try {
+                    saveIndex(indexFile);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Cannot save the index of the repository in " + indexFile, e);
+                }
+            }
         }
     }
 
     public void scan() {
-        scan(baseDir.listFiles());
-         
-        resolveAll(unresolvedPoms);
-        
-        // resolve the missing parents
-        int unresolved = pomsWithMissingParent.size();
-        while (unresolved > 0) {
-            resolveAll(pomsWithMissingParent);
-            if (pomsWithMissingParent.size() == unresolved) {
-                // stale detection
-                break;
-            }
-            unresolved = pomsWithMissingParent.size();
+        scannedDirectories.clear();
+        List<File> pomFiles = new ArrayList<File>();
+        listPoms(baseDir, new HashSet<String>(), pomFiles);
+
+        Map<File, POMInfo> scannedPoms = new LinkedHashMap<File, POMInfo>();
+        parsedPomCount = 0;
+        if (manifestFile != null) {
+            incrementalReadPoms(pomFiles, scannedPoms);
+        } else if (scanThreads > 1) {
+            parallelReadPoms(pomFiles, scannedPoms);
+        } else {
+            readPoms(pomFiles, scannedPoms);
         }
-        
-        // update the resolved poms once all the available parents are known
-        unresolved = unresolvedPoms.size();
-        while (unresolved > 0) {
-            resolveAll(unresolvedPoms);
-            if (unresolvedPoms.size() == unresolved) {
-                // stale detection
-                break;
+
+        // The poms taken from the manifest are linked to their parent as well, the manifest
+        // keeps them without the entries inherited from their parent and the repository
+        // starts empty on each run
+        resolveParents(scannedPoms);
+
+        scanned = true;
+    }
+
+    /**
+     * Returns the graph of the dependencies between the artifacts of the repository.
+     * The graph is built after the scan, and built again when the repository changes.
+     */
+    public DependencyGraph getDependencyGraph() {
+        if (dependencyGraph == null) {
+            loadAll();
+            dependencyGraph = new DependencyGraph(dep2info);
+        }
+        return dependencyGraph;
+    }
+
+    /**
+     * Prints the artifacts of the repository depending directly or transitively on an artifact,
+     * which are affected if the artifact is removed or changes incompatibly.
+     */
+    public void reportImpact(RepositoryReportWriter writer, String groupId, String artifactId) {
+        DependencyGraph graph = getDependencyGraph();
+        BitSet ids = graph.getIds(groupId, artifactId);
+        BitSet direct = new BitSet(graph.size());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            for (int dependent : graph.getReverseDependencies(id)) {
+                direct.set(dependent);
             }
-            unresolved = unresolvedPoms.size();
         }
-        
-        scanned = true;
+        BitSet transitive = graph.getTransitiveReverseDependencies(ids);
+        transitive.andNot(direct);
+
+        writer.printStart();
+        if (ids.isEmpty()) {
+            writer.printSectionStart("Errors");
+            printIssue(writer, "artifact-not-found", null, groupId + ":" + artifactId, -1,
+                    "Artifact " + groupId + ":" + artifactId + " not found");
+            writer.printSectionEnd();
+        } else {
+            printCoordinates(writer, "Artifacts depending directly on " + groupId + ":" + artifactId, "direct-dependent", graph, direct);
+            printCoordinates(writer, "Artifacts depending transitively on " + groupId + ":" + artifactId, "transitive-dependent", graph, transitive);
+        }
+        writer.printEnd();
+    }
+
+    private static void printCoordinates(RepositoryReportWriter writer, String section, String issue, DependencyGraph graph, BitSet ids) {
+        Set<String> coordinates = new TreeSet<String>();
+        for (Coordinate coordinate : graph.getCoordinates(ids)) {
+            coordinates.add(coordinate.toString());
+        }
+        writer.printSectionStart(section);
+        for (String coordinate : coordinates) {
+            printIssue(writer, issue, null, coordinate, -1, coordinate);
+        }
+        writer.printSectionEnd();
+    }
+
+    /**
+     * Prints an item of the report, as a record for the writers of structured reports.
+     *
+     * @param issue the type of issue
+     * @param pom the pom file, or null
+     * @param dependency the coordinates of the dependency, or null
+     * @param count the count associated with the issue, or -1
+     * @param message the text of the item
+     */
+    private static void printIssue(RepositoryReportWriter writer, String issue, File pom, String dependency, int count, String message) {
+        if (writer instanceof RepositoryReportRecordWriter) {
+            ((RepositoryReportRecordWriter) writer).printRecord(issue, pom == null ? null : pom.getAbsolutePath(), dependency, count, message);
+        } else {
+            writer.printItem(message);
+            writer.endItem();
+        }
+    }
+
+    /**
+     * Parses the poms loaded from the index, to get their dependencies.
+     */
+    private void loadAll() {
+        for (POMInfo pom : new ArrayList<POMInfo>(indexedPoms.keySet())) {
+            load(pom);
+        }
     }
 
     public void report(RepositoryReportWriter writer) {
 
+        // The report needs the dependencies of all the poms
+        loadAll();
+
         writer.printStart();
         
         if (pomsWithMissingParent.size() > 0) {
             writer.printSectionStart("POMs with missing parents");
-            for (File pom : pomsWithMissingParent.keySet()) {
-                writer.printItem(pom.getAbsolutePath());
-                writer.endItem();
+            for (Entry<File, POMInfo> entry : pomsWithMissingParent.entrySet()) {
+                File pom = entry.getKey();
+                printIssue(writer, "missing-parent", pom, String.valueOf(entry.getValue().getParent()), -1, pom.getAbsolutePath());
+            }
+            writer.printSectionEnd();
+        }
+        if (pomsWithParentCycle.size() > 0) {
+            writer.printSectionStart("POMs with a cycle in their parents");
+            for (File pom : pomsWithParentCycle.keySet()) {
+                printIssue(writer, "parent-cycle", pom, null, -1, pom.getAbsolutePath());
             }
             writer.printSectionEnd();
         }
@@ -244,14 +567,12 @@ public class Repository {
                 writer.printItem(pom.getAbsolutePath());
                 for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.DEPENDENCIES)) {
                     if (dependency.getVersion() == null || dependency.getVersion().contains("$")) {
-                        writer.printItem(dependency.toString());
-                        writer.endItem();
+                        printIssue(writer, "missing-dependency-version", pom, dependency.toString(), -1, dependency.toString());
                     }
                 }
                 for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.PLUGINS)) {
                     if (dependency.getVersion() == null || dependency.getVersion().contains("$")) {
-                        writer.printItem(dependency.toString());
-                        writer.endItem();
+                        printIssue(writer, "missing-plugin-version", pom, dependency.toString(), -1, dependency.toString());
                     }
                 }
                 writer.endItem();
@@ -259,110 +580,52 @@ public class Repository {
             writer.printSectionEnd();
         }
 
-        Set<String> issues = new TreeSet<String>();
-        Map<File, List<Dependency>> pomsWithIssues = new HashMap<File, List<Dependency>>();
+        // The issues are printed as they are found, only the top poms and dependencies are kept
+        writer.printSectionStart("Errors");
+        PriorityQueue<PomIssues> topPoms = new PriorityQueue<PomIssues>();
+        Map<Dependency, int[]> missingDependenciesCounts = new HashMap<Dependency, int[]>();
         for (Entry<File, POMInfo> entry : resolvedPoms.entrySet()) {
             File pom = entry.getKey();
             POMInfo pomInfo = entry.getValue();
             if (pomInfo.getThisPom().getVersion() == null) {
-                issues.add("Missing version in " + pom);
-            }
-            if (pomInfo.getThisPom().getVersion().endsWith("-SNAPSHOT")) {
-                issues.add("Snapshot version in " + pom);
-            }
-            for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.DEPENDENCIES)) {
-                if (!dep2info.containsKey(dependency)) {
-                    issues.add("Unpackaged dependency: " + dependency + " in " + pom);
-                    List<Dependency> pomIssues = pomsWithIssues.get(pom);
-                    if (pomIssues == null) {
-                        pomIssues = new ArrayList<Dependency>();
-                        pomsWithIssues.put(pom, pomIssues);
-                    }
-                    pomIssues.add(dependency);
-                }
+                printIssue(writer, "missing-version", pom, null, -1, "Missing version in " + pom);
+            } else if (pomInfo.getThisPom().getVersion().endsWith("-SNAPSHOT")) {
+                printIssue(writer, "snapshot-version", pom, pomInfo.getThisPom().toString(), -1, "Snapshot version in " + pom);
             }
-            for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.PLUGINS)) {
-                if (!dep2info.containsKey(dependency)) {
-                    issues.add("Unpackaged plugin: " + dependency + " in " + pom);
-                    List<Dependency> pomIssues = pomsWithIssues.get(pom);
-                    if (pomIssues == null) {
-                        pomIssues = new ArrayList<Dependency>();
-                        pomsWithIssues.put(pom, pomIssues);
-                    }
-                    pomIssues.add(dependency);
-                }
+            List<Dependency> missingDeps = new ArrayList<Dependency>();
+            reportMissingDependencies(writer, "unpackaged-dependency", "Unpackaged dependency: ", pom,
+                    pomInfo.getDependencies().get(DependencyType.DEPENDENCIES), missingDeps, missingDependenciesCounts);
+            reportMissingDependencies(writer, "unpackaged-plugin", "Unpackaged plugin: ", pom,
+                    pomInfo.getDependencies().get(DependencyType.PLUGINS), missingDeps, missingDependenciesCounts);
+            if (!missingDeps.isEmpty()) {
+                offer(topPoms, new PomIssues(pom, missingDeps), reportTopCount);
             }
         }
-
-        writer.printSectionStart("Errors");
-        for (String issue : issues) {
-            writer.printItem(issue);
-            writer.endItem();
-        }
         writer.printSectionEnd();
 
         // Find the poms with most issues
-        Map<Integer, List<File>> pomsWithNumberOfIssues = new TreeMap<Integer, List<File>>(Collections.reverseOrder());
-        for (Entry<File, List<Dependency>> entry : pomsWithIssues.entrySet()) {
-            File pom = entry.getKey();
-            List<Dependency> missingDeps = entry.getValue();
-            int count = missingDeps.size();
-            List<File> orderedPoms = pomsWithNumberOfIssues.get(count);
-            if (orderedPoms == null) {
-                orderedPoms = new ArrayList<File>();
-                pomsWithNumberOfIssues.put(count, orderedPoms);
-            }
-            orderedPoms.add(pom);
-        }
-        if (!pomsWithNumberOfIssues.isEmpty()) {
-            writer.printSectionStart("Top 10 POM files with issues");
-            int count = 0;
-            for (Iterator<List<File>> i = pomsWithNumberOfIssues.values().iterator(); i.hasNext() && count < 10; ) {
-                List<File> orderedPoms = i.next();
-                for (Iterator<File> j = orderedPoms.iterator(); j.hasNext() && count < 10; count++) {
-                    File pom = j.next();
-                    List<Dependency> missingDeps = pomsWithIssues.get(pom);
-                    writer.printItem("Missing dependencies in " + pom);
-                    for (Dependency dependency : missingDeps) {
-                        writer.printItem(dependency.toString());
-                        writer.endItem();
-                    }
-                    writer.endItem();
+        if (!topPoms.isEmpty()) {
+            writer.printSectionStart("Top " + reportTopCount + " POM files with issues");
+            for (PomIssues pomIssues : descending(topPoms)) {
+                writer.printItem("Missing dependencies in " + pomIssues.pom);
+                for (Dependency dependency : pomIssues.missingDeps) {
+                    printIssue(writer, "top-pom", pomIssues.pom, dependency.toString(), pomIssues.missingDeps.size(), dependency.toString());
                 }
+                writer.endItem();
             }
             writer.printSectionEnd();
         }
 
         // Find the dependencies that need packaging most
-        Map<Dependency, Integer> missingDependenciesCounts = new HashMap<Dependency, Integer>();
-        for (Entry<File, List<Dependency>> entry : pomsWithIssues.entrySet()) {
-            List<Dependency> missingDeps = entry.getValue();
-            for (Dependency missingDependency : missingDeps) {
-                Integer lastCount = missingDependenciesCounts.remove(missingDependency);
-                if (lastCount == null) {
-                    lastCount = 0;
-                }
-                missingDependenciesCounts.put(missingDependency, lastCount + 1);
-            }
-        }
-        List<Map.Entry<Dependency, Integer>> missingDependenciesCountList = new ArrayList<Map.Entry<Dependency, Integer>>(missingDependenciesCounts.entrySet());
-        Collections.sort(missingDependenciesCountList, new Comparator<Map.Entry<Dependency, Integer>>() {
-
-            public int compare(Map.Entry<Dependency, Integer> entry1, Map.Entry<Dependency, Integer> entry2) {
-                Integer count1 = entry1.getValue();
-                Integer count2 = entry2.getValue();
-                return count2.compareTo(count1);
-            }
-        });
-        if (!missingDependenciesCountList.isEmpty()) {
-            writer.printSectionStart("Top 10 missing dependencies");
-            int count = 0;
-            for (Iterator<Map.Entry<Dependency, Integer>> i = missingDependenciesCountList.iterator(); i.hasNext() && count < 10; count++) {
-                Map.Entry<Dependency, Integer> entry = i.next();
-                Dependency missingDependency = entry.getKey();
-                Integer numberOfTimes = entry.getValue();
-                writer.printItem("Missing dependency " + missingDependency + " is needed in " + numberOfTimes + " places");
-                writer.endItem();
+        PriorityQueue<MissingDependency> topMissingDependencies = new PriorityQueue<MissingDependency>();
+        for (Entry<Dependency, int[]> entry : missingDependenciesCounts.entrySet()) {
+            offer(topMissingDependencies, new MissingDependency(entry.getKey(), entry.getValue()[0]), reportTopCount);
+        }
+        if (!topMissingDependencies.isEmpty()) {
+            writer.printSectionStart("Top " + reportTopCount + " missing dependencies");
+            for (MissingDependency missingDependency : descending(topMissingDependencies)) {
+                printIssue(writer, "top-missing-dependency", null, missingDependency.dependency.toString(), missingDependency.count,
+                        "Missing dependency " + missingDependency.dependency + " is needed in " + missingDependency.count + " places");
             }
             writer.printSectionEnd();
         }
@@ -370,41 +633,615 @@ public class Repository {
         writer.printEnd();
     }
 
-    private void resolveAll(Map<File, POMInfo> file2pom) {
-        // copy to avoid concurrent modifications
-        Map<File, POMInfo> copy = new HashMap<File, POMInfo>(file2pom);
-        for (Entry<File, POMInfo> entry : copy.entrySet()) {
-            try {
-                registerPom(entry.getKey(), entry.getValue());
-            } catch (DependencyNotFoundException e) {
-                // Ignore
+    private void reportMissingDependencies(RepositoryReportWriter writer, String issue, String message, File pom, List<Dependency> dependencies,
+                                           List<Dependency> missingDeps, Map<Dependency, int[]> missingDependenciesCounts) {
+        for (Dependency dependency : dependencies) {
+            if (!dep2info.containsKey(dependency.getCoordinate())) {
+                printIssue(writer, issue, pom, dependency.toString(), -1, message + dependency + " in " + pom);
+                missingDeps.add(dependency);
+                int[] count = missingDependenciesCounts.get(dependency);
+                if (count == null) {
+                    count = new int[1];
+                    missingDependenciesCounts.put(dependency, count);
+                }
+                count[0]++;
             }
         }
     }
 
-    private void scan(File[] files) {
-        if (files == null) {
-            return;
+    /**
+     * Adds the element to the heap if it is one of the max greatest elements seen so far.
+     */
+    private static <T extends Comparable<T>> void offer(PriorityQueue<T> heap, T element, int max) {
+        if (heap.size() < max) {
+            heap.add(element);
+        } else if (max > 0 && heap.peek().compareTo(element) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * Returns the elements of the heap, the greatest first.
+     */
+    private static <T extends Comparable<T>> List<T> descending(PriorityQueue<T> heap) {
+        List<T> elements = new ArrayList<T>(heap);
+        Collections.sort(elements, Collections.reverseOrder());
+        return elements;
+    }
+
+    /**
+     * Links the scanned poms to their parent, each pom being resolved once after its parent.
+     *
+     * The poms are ordered by walking up the parents until a pom already visited,
+     * then resolved from the top of the chain. A pom is resolved if its parent is resolved,
+     * the poms whose parent is missing or which are part of a cycle and their children
+     * are left unresolved.
+     */
+    private void resolveParents(Map<File, POMInfo> scannedPoms) {
+        // A pom can be shared by several files linking to the same physical file
+        Map<POMInfo, List<File>> pomFiles = new IdentityHashMap<POMInfo, List<File>>();
+        for (Entry<File, POMInfo> entry : scannedPoms.entrySet()) {
+            indexPom(entry.getKey(), entry.getValue());
+            unresolvedPoms.put(entry.getKey(), entry.getValue());
+            List<File> files = pomFiles.get(entry.getValue());
+            if (files == null) {
+                files = new ArrayList<File>(1);
+                pomFiles.put(entry.getValue(), files);
+            }
+            files.add(entry.getKey());
+        }
+
+        Set<POMInfo> visited = Collections.newSetFromMap(new IdentityHashMap<POMInfo, Boolean>());
+        List<POMInfo> chain = new ArrayList<POMInfo>();
+        for (POMInfo scannedPom : scannedPoms.values()) {
+            chain.clear();
+            POMInfo pom = scannedPom;
+            while (pom != null && pomFiles.containsKey(pom) && !visited.contains(pom)) {
+                visited.add(pom);
+                chain.add(pom);
+                pom = findParentPOM(pom);
+            }
+
+            // The chain ends with a cycle if it loops back on one of its own poms
+            int cycleStart = chain.size();
+            if (pom != null) {
+                for (int i = 0; i < chain.size(); i++) {
+                    if (chain.get(i) == pom) {
+                        cycleStart = i;
+                        break;
+                    }
+                }
+            }
+
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                POMInfo chainPom = chain.get(i);
+                resolveParent(pomFiles.get(chainPom), chainPom, i >= cycleStart);
+            }
+        }
+    }
+
+    private POMInfo findParentPOM(POMInfo pom) {
+        if (pom.getParent() == null || pom.getParent().isSuperPom()) {
+            return null;
+        }
+        return dep2info.get(pom.getParent().getCoordinate());
+    }
+
+    private void resolveParent(List<File> files, POMInfo pomInfo, boolean inCycle) {
+        POMInfo parentPOM = superPom;
+        boolean resolved = true;
+        boolean missingParent = false;
+        if (inCycle) {
+            log.warning("Cycle in the parents of " + files.get(0));
+            resolved = false;
+        } else if (pomInfo.getParent() != null && !pomInfo.getParent().isSuperPom()) {
+            POMInfo foundParent = dep2info.get(pomInfo.getParent().getCoordinate());
+            if (foundParent == null) {
+                missingParent = true;
+                resolved = false;
+            } else {
+                parentPOM = foundParent;
+                resolved = resolvedPomInfos.contains(foundParent);
+            }
         }
+        pomInfo.setParentPOM(parentPOM);
         for (File file : files) {
-            if (file.isDirectory()) {
-                scan(file.listFiles());
-            } else if (file.getName().endsWith(".pom")) {
+            if (inCycle) {
+                pomsWithParentCycle.put(file, pomInfo);
+            }
+            if (missingParent) {
+                pomsWithMissingParent.put(file, pomInfo);
+            }
+            checkMissingVersions(file, pomInfo);
+            if (resolved) {
+                markResolved(file, pomInfo);
+            }
+        }
+    }
+
+    /**
+     * Lists the pom files in the directory and its sub-directories.
+     * The symbolic links to a parent directory are skipped to avoid looping forever.
+     *
+     * @param parentDirs the canonical paths of the directories being visited
+     */
+    private void listPoms(File dir, Set<String> parentDirs, List<File> pomFiles) {
+        String canonicalDir = canonicalPath(dir);
+        if (!parentDirs.add(canonicalDir)) {
+            log.warning("Symbolic link loop in " + dir + ", skipping it");
+            return;
+        }
+        scannedDirectories.add(dir);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    listPoms(file, parentDirs, pomFiles);
+                } else if (file.getName().endsWith(".pom")) {
+                    pomFiles.add(file);
+                }
+            }
+        }
+        parentDirs.remove(canonicalDir);
+    }
+
+    /**
+     * Returns the path of the file with the symbolic links resolved, used to parse
+     * only once the files linked from several places in the repository.
+     */
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private void readPoms(List<File> pomFiles, Map<File, POMInfo> scannedPoms) {
+        Map<String, POMInfo> physicalPoms = new HashMap<String, POMInfo>();
+        for (File file : pomFiles) {
+            String path = canonicalPath(file);
+            if (!physicalPoms.containsKey(path)) {
+                POMInfo pom = null;
                 try {
-                    registerPom(file, pomReader.readPom(file));
-                } catch (DependencyNotFoundException e) {
-                    // Ignore
+                    pom = pomReader.readPom(file);
                 } catch (Exception e) {
                     System.out.println("Failed to parse " + file);
                     e.printStackTrace();
                     System.out.println();
                 }
+                physicalPoms.put(path, pom);
+            }
+            if (physicalPoms.get(path) != null) {
+                scannedPoms.put(file, physicalPoms.get(path));
+            }
+        }
+        parsedPomCount += physicalPoms.size();
+    }
+
+    /**
+     * Reads the poms, parsing only the files changed since the scan recorded in the manifest,
+     * and records the poms in the manifest before they are linked to their parent.
+     *
+     * A file has changed if its size has changed, or if its modification time and the checksum
+     * of its content have changed. The files deleted since the previous scan are removed from
+     * the manifest.
+     */
+    private void incrementalReadPoms(List<File> pomFiles, Map<File, POMInfo> scannedPoms) {
+        ScanManifest manifest = new ScanManifest();
+        if (manifestFile.exists()) {
+            try {
+                manifest = ScanManifest.load(manifestFile, baseDir);
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Cannot read the manifest of the repository in " + manifestFile + ", parsing all the poms", e);
+            }
+        }
+
+        ScanManifest newManifest = new ScanManifest();
+        Map<String, POMInfo> physicalPoms = new HashMap<String, POMInfo>();
+        Map<String, ScanManifest.Entry> changedEntries = new HashMap<String, ScanManifest.Entry>();
+        List<File> changedFiles = new ArrayList<File>();
+        List<String> paths = new ArrayList<String>(pomFiles.size());
+        for (File file : pomFiles) {
+            String path = canonicalPath(file);
+            paths.add(path);
+            if (physicalPoms.containsKey(path) || changedEntries.containsKey(path)) {
+                continue;
+            }
+            long length = file.length();
+            long lastModified = file.lastModified();
+            ScanManifest.Entry entry = manifest.get(path);
+            if (entry == null || !entry.isUnchanged(length, lastModified)) {
+                long checksum = -1;
+                try {
+                    checksum = ScanManifest.checksum(file);
+                } catch (IOException e) {
+                    // The file is parsed again, which reports the error
+                }
+                if (entry != null && entry.length == length && entry.checksum == checksum) {
+                    // Only the modification time has changed
+                    entry = new ScanManifest.Entry(length, lastModified, checksum, entry.pom);
+                } else {
+                    changedEntries.put(path, new ScanManifest.Entry(length, lastModified, checksum, null));
+                    changedFiles.add(file);
+                    continue;
+                }
+            }
+            newManifest.put(path, entry);
+            physicalPoms.put(path, entry.pom);
+        }
+
+        Map<File, POMInfo> parsedPoms = new HashMap<File, POMInfo>();
+        if (scanThreads > 1) {
+            parallelReadPoms(changedFiles, parsedPoms);
+        } else {
+            readPoms(changedFiles, parsedPoms);
+        }
+        for (Entry<File, POMInfo> parsed : parsedPoms.entrySet()) {
+            String path = canonicalPath(parsed.getKey());
+            ScanManifest.Entry entry = changedEntries.get(path);
+            newManifest.put(path, new ScanManifest.Entry(entry.length, entry.lastModified, entry.checksum, parsed.getValue()));
+            physicalPoms.put(path, parsed.getValue());
+        }
+
+        for (int i = 0; i < pomFiles.size(); i++) {
+            POMInfo pom = physicalPoms.get(paths.get(i));
+            if (pom != null) {
+                scannedPoms.put(pomFiles.get(i), pom);
+            }
+        }
+
+        try {
+            newManifest.save(manifestFile, baseDir);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot save the manifest of the repository in " + manifestFile, e);
+        }
+    }
+
+    private POMReader newPOMReader() {
+        POMReader reader = new POMReader();
+        reader.setStringPool(stringPool);
+        return reader;
+    }
+
+    /**
+     * Parses the poms with several threads, each thread using its own POMReader,
+     * and collects them in the order of the directory walk.
+     */
+    private void parallelReadPoms(List<File> pomFiles, Map<File, POMInfo> scannedPoms) {
+        final ThreadLocal<POMReader> readers = new ThreadLocal<POMReader>() {
+            protected POMReader initialValue() {
+                return newPOMReader();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(scanThreads);
+        try {
+            Map<String, Future<POMInfo>> parsedPoms = new HashMap<String, Future<POMInfo>>();
+            List<String> paths = new ArrayList<String>(pomFiles.size());
+            for (final File file : pomFiles) {
+                String path = canonicalPath(file);
+                paths.add(path);
+                if (!parsedPoms.containsKey(path)) {
+                    parsedPoms.put(path, executor.submit(new Callable<POMInfo>() {
+                        public POMInfo call() throws Exception {
+                            return readers.get().readPom(file);
+                        }
+                    }));
+                }
+            }
+
+            Set<String> failedPaths = new HashSet<String>();
+            for (int i = 0; i < pomFiles.size(); i++) {
+                File file = pomFiles.get(i);
+                try {
+                    scannedPoms.put(file, parsedPoms.get(paths.get(i)).get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    if (failedPaths.add(paths.get(i))) {
+                        System.out.println("Failed to parse " + file);
+                        e.getCause().printStackTrace();
+                        System.out.println();
+                    }
+                }
+            }
+            parsedPomCount += parsedPoms.size();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the complete pom for a pom loaded from the index, parsing its file if needed.
+     */
+    private POMInfo load(POMInfo pom) {
+        File file = indexedPoms.remove(pom);
+        if (file == null) {
+            return pom;
+        }
+        try {
+            POMInfo loadedPom = pomReader.readPom(file);
+            try {
+                registerPom(file, loadedPom, false);
+            } catch (DependencyNotFoundException e) {
+                // Ignore, as in scan()
+            }
+            return loadedPom;
+        } catch (Exception e) {
+            log.log(Level.SEVERE, "Failed to parse " + file, e);
+            return pom;
+        }
+    }
+
+    /**
+     * Saves the poms found by the last scan in the index file.
+     *
+     * The index contains a header, the directories of the repository with their modification
+     * time, a fixed-width record for each pom and a table of the strings used in the records:
+     * <pre>
+     * header:    magic, version, base directory, number of directories, number of poms, number of strings
+     * directory: path, modification time (long)
+     * pom:       file, groupId, artifactId, type, version, classifier, parent groupId, parent artifactId,
+     *            parent type, parent version, published rules, flags, modification time of the file (long)
+     * strings:   offset of each string, then the strings (length + UTF-8 bytes)
+     * </pre>
+     * All the values are ints except when noted, the strings are referenced by their index
+     * in the table, -1 for null.
+     */
+    public void saveIndex(File indexFile) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        List<Map.Entry<File, POMInfo>> poms = new ArrayList<Map.Entry<File, POMInfo>>();
+        poms.addAll(resolvedPoms.entrySet());
+        poms.addAll(unresolvedPoms.entrySet());
+
+        if (indexFile.getParentFile() != null) {
+            indexFile.getParentFile().mkdirs();
+        }
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(stringId(strings, baseDir.getPath()));
+            out.writeInt(scannedDirectories.size());
+            out.writeInt(poms.size());
+            // Placeholder for the number of strings, the header has a fixed size
+            out.writeInt(0);
+
+            for (File dir : scannedDirectories) {
+                out.writeInt(stringId(strings, dir.getPath()));
+                out.writeLong(dir.lastModified());
+            }
+
+            for (Map.Entry<File, POMInfo> entry : poms) {
+                POMInfo pom = entry.getValue();
+                Dependency thisPom = pom.getThisPom();
+                Dependency parent = pom.getParent();
+                int flags = 0;
+                if (thisPom.isPlugin()) {
+                    flags |= INDEX_PLUGIN;
+                }
+                if (resolvedPoms.containsKey(entry.getKey())) {
+                    flags |= INDEX_RESOLVED;
+                }
+                if (pomsWithMissingParent.containsKey(entry.getKey())) {
+                    flags |= INDEX_MISSING_PARENT;
+                }
+                if (pomsWithParentCycle.containsKey(entry.getKey())) {
+                    flags |= INDEX_PARENT_CYCLE;
+                }
+                out.writeInt(stringId(strings, entry.getKey().getPath()));
+                out.writeInt(stringId(strings, thisPom.getGroupId()));
+                out.writeInt(stringId(strings, thisPom.getArtifactId()));
+                out.writeInt(stringId(strings, thisPom.getType()));
+                out.writeInt(stringId(strings, thisPom.getVersion()));
+                out.writeInt(stringId(strings, thisPom.getClassifier()));
+                if (parent != null) {
+                    flags |= INDEX_HAS_PARENT;
+                    out.writeInt(stringId(strings, parent.getGroupId()));
+                    out.writeInt(stringId(strings, parent.getArtifactId()));
+                    out.writeInt(stringId(strings, parent.getType()));
+                    out.writeInt(stringId(strings, parent.getVersion()));
+                } else {
+                    out.writeInt(-1);
+                    out.writeInt(-1);
+                    out.writeInt(-1);
+                    out.writeInt(-1);
+                }
+                String rules = pom.getProperties() == null ? null : pom.getProperties().get("debian.mavenRules");
+                out.writeInt(stringId(strings, rules));
+                out.writeInt(flags);
+                out.writeLong(entry.getKey().lastModified());
+            }
+
+            List<byte[]> encodedStrings = new ArrayList<byte[]>(strings.size());
+            for (String string : strings.keySet()) {
+                encodedStrings.add(string.getBytes("UTF-8"));
+            }
+            int offset = 0;
+            for (byte[] encoded : encodedStrings) {
+                out.writeInt(offset);
+                offset += 4 + encoded.length;
+            }
+            for (byte[] encoded : encodedStrings) {
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+        } finally {
+            out.close();
+        }
+
+        // Write the number of strings in the header
+        RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+        try {
+            raf.seek(20);
+            raf.writeInt(strings.size());
+        } finally {
+            raf.close();
+        }
+
+        if (!tmpFile.renameTo(indexFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename " + tmpFile + " to " + indexFile);
+        }
+    }
+
+    private static int stringId(Map<String, Integer> strings, String string) {
+        if (string == null) {
+            return -1;
+        }
+        Integer id = strings.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * Loads the poms from the index file instead of scanning the repository.
+     *
+     * Only the information needed to search the poms is read from the index, a pom is parsed
+     * when its complete content is needed, for example when it is the parent of another pom.
+     *
+     * @return false if the index is missing, invalid or older than the directories or the poms of the repository
+     */
+    public boolean loadIndex(File indexFile) {
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try {
+            ByteBuffer buffer;
+            RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+
+            if (buffer.getInt(0) != INDEX_MAGIC || buffer.getInt(4) != INDEX_VERSION) {
+                return false;
+            }
+            int dirCount = buffer.getInt(12);
+            int pomCount = buffer.getInt(16);
+            int stringCount = buffer.getInt(20);
+            int dirsStart = INDEX_HEADER_SIZE;
+            int pomsStart = dirsStart + dirCount * INDEX_DIRECTORY_SIZE;
+            int offsetsStart = pomsStart + pomCount * INDEX_POM_SIZE;
+            int stringsStart = offsetsStart + stringCount * 4;
+            String[] strings = new String[stringCount];
+
+            if (!baseDir.getPath().equals(indexString(buffer, strings, buffer.getInt(8), offsetsStart, stringsStart))) {
+                return false;
+            }
+            List<File> directories = new ArrayList<File>(dirCount);
+            for (int i = 0; i < dirCount; i++) {
+                int position = dirsStart + i * INDEX_DIRECTORY_SIZE;
+                File dir = new File(indexString(buffer, strings, buffer.getInt(position), offsetsStart, stringsStart));
+                if (dir.lastModified() != buffer.getLong(position + 4)) {
+                    return false;
+                }
+                directories.add(dir);
+            }
+            // The poms modified in place don't change the modification time of their directory
+            for (int i = 0; i < pomCount; i++) {
+                int position = pomsStart + i * INDEX_POM_SIZE;
+                File file = new File(indexString(buffer, strings, buffer.getInt(position), offsetsStart, stringsStart));
+                if (file.lastModified() != buffer.getLong(position + 48)) {
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < pomCount; i++) {
+                int position = pomsStart + i * INDEX_POM_SIZE;
+                String[] values = new String[11];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = indexString(buffer, strings, buffer.getInt(position + j * 4), offsetsStart, stringsStart);
+                }
+                int flags = buffer.getInt(position + 44);
+
+                File file = new File(values[0]);
+                POMInfo pom = new POMInfo();
+                pom.setThisPom(new Dependency.Builder().setGroupId(values[1]).setArtifactId(values[2])
+                        .setType(values[3]).setVersion(values[4]).setClassifier(values[5]).build());
+                if ((flags & INDEX_HAS_PARENT) != 0) {
+                    pom.setParent(new Dependency(values[6], values[7], values[8], values[9]));
+                }
+                Map<String, String> properties = new HashMap<String, String>();
+                if (values[10] != null) {
+                    properties.put("debian.mavenRules", values[10]);
+                }
+                pom.setProperties(properties);
+
+                indexPom(file, pom);
+                if ((flags & INDEX_RESOLVED) != 0) {
+                    markResolved(file, pom);
+                } else {
+                    unresolvedPoms.put(file, pom);
+                }
+                if ((flags & INDEX_MISSING_PARENT) != 0) {
+                    pomsWithMissingParent.put(file, pom);
+                }
+                if ((flags & INDEX_PARENT_CYCLE) != 0) {
+                    pomsWithParentCycle.put(file, pom);
+                }
+                indexedPoms.put(pom, file);
+            }
+
+            scannedDirectories = directories;
+            scanned = true;
+            return true;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Cannot read the index of the repository in " + indexFile, e);
+            dep2info.clear();
+            dependencyGraph = null;
+            pomsByGroupAndArtifact.clear();
+            publishedRules.clear();
+            indexedRulesSource.clear();
+            resolvedPoms.clear();
+            resolvedPomInfos.clear();
+            unresolvedPoms.clear();
+            pomsWithMissingParent.clear();
+            pomsWithParentCycle.clear();
+            indexedPoms.clear();
+            return false;
+        }
+    }
+
+    private static String indexString(ByteBuffer buffer, String[] strings, int id, int offsetsStart, int stringsStart) throws IOException {
+        if (id < 0) {
+            return null;
+        }
+        if (strings[id] == null) {
+            int position = stringsStart + buffer.getInt(offsetsStart + id * 4);
+            byte[] encoded = new byte[buffer.getInt(position)];
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = buffer.get(position + 4 + i);
             }
+            strings[id] = new String(encoded, "UTF-8");
         }
+        return strings[id];
     }
 
     public void registerPom(File file, POMInfo pomInfo) throws DependencyNotFoundException {
-        dep2info.put(pomInfo.getThisPom(), pomInfo);
+        registerPom(file, pomInfo, true);
+    }
+
+    /**
+     * @param mayChange true if the published rules of the pom can be modified after its registration
+     */
+    private void registerPom(File file, POMInfo pomInfo, boolean mayChange) throws DependencyNotFoundException {
+        indexPom(file, pomInfo);
+        if (mayChange) {
+            registeredPoms.add(pomInfo);
+        }
+        // The pom stays unresolved if its parent is missing
+        POMInfo previous = resolvedPoms.remove(file);
+        if (previous != null) {
+            resolvedPomInfos.remove(previous);
+        }
         unresolvedPoms.put(file, pomInfo);
 
         POMInfo parentPOM = superPom;
@@ -418,7 +1255,7 @@ public class Repository {
                     parentPOM = foundParent;
                     pomsWithMissingParent.remove(file);
                 }
-                if (!resolvedPoms.values().contains(parentPOM)) {
+                if (!resolvedPomInfos.contains(parentPOM)) {
                     throw new DependencyNotFoundException(parentPOM.getThisPom());
                 }
             }
@@ -428,42 +1265,79 @@ public class Repository {
             // the true parent POM is not known and will be eliminated, yet we need
             // the versions from the super POM.
             pomInfo.setParentPOM(parentPOM);
+            checkMissingVersions(file, pomInfo);
+        }
 
-            // check if the pom specifies plugins or dependencies without an explicit version
-            pomsWithMissingVersions.remove(file);
-            for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.DEPENDENCIES)) {
-                if (dependency.getVersion() == null) {
-                    pomsWithMissingVersions.put(file, pomInfo);
-                }
+        markResolved(file, pomInfo);
+    }
+
+    /**
+     * Checks if the pom specifies plugins or dependencies without an explicit version.
+     */
+    private void checkMissingVersions(File file, POMInfo pomInfo) {
+        pomsWithMissingVersions.remove(file);
+        for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.DEPENDENCIES)) {
+            if (dependency.getVersion() == null) {
+                pomsWithMissingVersions.put(file, pomInfo);
             }
-            for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.PLUGINS)) {
-                if (dependency.getVersion() == null) {
-                    pomsWithMissingVersions.put(file, pomInfo);
-                }
+        }
+        for (Dependency dependency : pomInfo.getDependencies().get(DependencyType.PLUGINS)) {
+            if (dependency.getVersion() == null) {
+                pomsWithMissingVersions.put(file, pomInfo);
             }
         }
+    }
 
-        // mark the pom as resolved
-        resolvedPoms.put(file, pomInfo);
+    private void markResolved(File file, POMInfo pomInfo) {
+        POMInfo previous = resolvedPoms.put(file, pomInfo);
+        if (previous != null) {
+            resolvedPomInfos.remove(previous);
+        }
+        resolvedPomInfos.add(pomInfo);
         unresolvedPoms.remove(file);
     }
 
     public static void main(String[] args) {
+        int status = run(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs mh_checkrepo without exiting the JVM, as done by the daemon.
+     *
+     * @return the exit status of the command
+     */
+    static int run(String[] args) {
         if (args != null && args.length > 0 && ("-h".equals(args[0]) || "--help".equals(args[0]))) {
             System.out.println("Purpose: Check content of a Maven repository.");
             System.out.println("Usage: [option]");
             System.out.println("");
             System.out.println("Options:");
             System.out.println("  -v, --verbose: be extra verbose");
-            System.out.println("  -o<format>, --output=<format>: 'text' or 'html' to change output format");
+            System.out.println("  -o<format>, --output=<format>: 'text', 'html', 'json' (JSON Lines) or 'csv'");
+            System.out.println("    to change output format");
             System.out.println("  -r<repository>, --repository=<repository>: directory of Maven repository");
-            return;
+            System.out.println("  -j<threads>, --threads=<threads>: number of threads used to parse the poms.");
+            System.out.println("    Default to 1");
+            System.out.println("  -m<manifest>, --manifest=<manifest>: file recording the poms of the repository,");
+            System.out.println("    to parse only the poms changed since the previous run");
+            System.out.println("  -n<count>, --top=<count>: number of POMs and dependencies listed in the top");
+            System.out.println("    sections of the report. Default to 10");
+            System.out.println("  -i<groupId:artifactId>, --impact=<groupId:artifactId>: list the artifacts");
+            System.out.println("    depending directly or transitively on the artifact instead of checking the repository");
+            return 0;
         }
 
         // default format
         String format = "text";
         // default repository
         File repoLocation = new File("/usr/share/maven-repo/");
+        int threads = 1;
+        int top = 10;
+        String impact = null;
+        File manifest = null;
 
         // Parse parameters
         int i = inc(-1, args);
@@ -478,21 +1352,58 @@ public class Repository {
                     repoLocation = new File(arg.substring(2).trim());
                 } else if (arg.startsWith("--repository=")) {
                     repoLocation = new File(arg.substring("--repository=".length()).trim());
+                } else if (arg.startsWith("-j")) {
+                    threads = Integer.parseInt(arg.substring(2).trim());
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()).trim());
+                } else if (arg.startsWith("-m")) {
+                    manifest = new File(arg.substring(2).trim());
+                } else if (arg.startsWith("--manifest=")) {
+                    manifest = new File(arg.substring("--manifest=".length()).trim());
+                } else if (arg.startsWith("-n")) {
+                    top = Integer.parseInt(arg.substring(2).trim());
+                } else if (arg.startsWith("--top=")) {
+                    top = Integer.parseInt(arg.substring("--top=".length()).trim());
+                } else if (arg.startsWith("-i")) {
+                    impact = arg.substring(2).trim();
+                } else if (arg.startsWith("--impact=")) {
+                    impact = arg.substring("--impact=".length()).trim();
                 }
                 i = inc(i, args);
             }
         }
 
         Repository repository = new Repository(repoLocation);
+        repository.setScanThreads(threads);
+        repository.setReportTopCount(top);
+        repository.setManifestFile(manifest);
         RepositoryReportWriter reportWriter;
         if ("text".equals(format)) {
             reportWriter = new RepositoryReportTextWriter();
+        } else if ("json".equals(format)) {
+            reportWriter = new RepositoryReportJSONWriter();
+        } else if ("csv".equals(format)) {
+            reportWriter = new RepositoryReportCSVWriter();
         } else {
             reportWriter = new RepositoryReportHTMLWriter();
         }
         
+        String[] artifact = null;
+        if (impact != null) {
+            artifact = impact.split(":");
+            if (artifact.length < 2) {
+                System.err.println("Invalid artifact " + impact + ", expected groupId:artifactId");
+                return 1;
+            }
+        }
+
         repository.scan();
-        repository.report(reportWriter);
+        if (artifact != null) {
+            repository.reportImpact(reportWriter, artifact[0], artifact[1]);
+        } else {
+            repository.report(reportWriter);
+        }
+        return 0;
     }
 
     private static int inc(int i, String[] args) {
@@ -502,4 +1413,57 @@ public class Repository {
         return i;
     }
 
+    /**
+     * The missing dependencies of a pom, the poms with more missing dependencies being greater.
+     */
+    private static class PomIssues implements Comparable<PomIssues> {
+        private final File pom;
+        private final List<Dependency> missingDeps;
+
+        private PomIssues(File pom, List<Dependency> missingDeps) {
+            this.pom = pom;
+            this.missingDeps = missingDeps;
+        }
+
+        public int compareTo(PomIssues other) {
+            if (missingDeps.size() != other.missingDeps.size()) {
+                return missingDeps.size() < other.missingDeps.size() ? -1 : 1;
+            }
+            // The first file in alphabetical order comes first in the report
+            return other.pom.compareTo(pom);
+        }
+    }
+
+    /**
+     * A missing dependency and the number of times it is needed.
+     */
+    private static class MissingDependency implements Comparable<MissingDependency> {
+        private final Dependency dependency;
+        private final int count;
+
+        private MissingDependency(Dependency dependency, int count) {
+            this.dependency = dependency;
+            this.count = count;
+        }
+
+        public int compareTo(MissingDependency other) {
+            if (count != other.count) {
+                return count < other.count ? -1 : 1;
+            }
+            return other.dependency.toString().compareTo(dependency.toString());
+        }
+    }
+
+    /**
+     * A rule published by a pom.
+     */
+    private static class PublishedRule {
+        private final DependencyRule rule;
+        private final POMInfo pom;
+
+        private PublishedRule(DependencyRule rule, POMInfo pom) {
+            this.rule = rule;
+            this.pom = pom;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Prints the report in the CSV format (RFC 4180), with a header line naming the columns.
+ * The null fields and the missing counts are empty.
+ */
+public class RepositoryReportCSVWriter extends RepositoryReportRecordWriter {
+
+    public RepositoryReportCSVWriter() {
+    }
+
+    public RepositoryReportCSVWriter(Writer out) {
+        super(out);
+    }
+
+    protected void writeHeader(Writer out) throws IOException {
+        out.write("issue,pom,dependency,count,message\r\n");
+    }
+
+    protected void writeRecord(Writer out, String issue, String pom, String dependency, int count, String message) throws IOException {
+        writeField(out, issue);
+        out.write(',');
+        writeField(out, pom);
+        out.write(',');
+        writeField(out, dependency);
+        out.write(',');
+        if (count >= 0) {
+            out.write(Integer.toString(count));
+        }
+        out.write(',');
+        writeField(out, message);
+        out.write("\r\n");
+    }
+
+    private static void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Prints the report in the JSON Lines format: one JSON object per issue and per line.
+ * The null fields and the missing counts are omitted.
+ */
+public class RepositoryReportJSONWriter extends RepositoryReportRecordWriter {
+
+    public RepositoryReportJSONWriter() {
+    }
+
+    public RepositoryReportJSONWriter(Writer out) {
+        super(out);
+    }
+
+    protected void writeRecord(Writer out, String issue, String pom, String dependency, int count, String message) throws IOException {
+        out.write('{');
+        writeField(out, "issue", issue, false);
+        writeField(out, "pom", pom, true);
+        writeField(out, "dependency", dependency, true);
+        if (count >= 0) {
+            out.write(",\"count\":");
+            out.write(Integer.toString(count));
+        }
+        writeField(out, "message", message, true);
+        out.write("}\n");
+    }
+
+    private static void writeField(Writer out, String name, String value, boolean separator) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (separator) {
+            out.write(',');
+        }
+        out.write('"');
+        out.write(name);
+        out.write("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base class of the writers of structured reports, printing one record for each issue.
+ *
+ * The records have the fields issue (the type of issue), pom (the path of the pom file),
+ * dependency (the coordinates of the dependency), count and message (the text of the item
+ * in the text report). The sections and the items without record are not printed.
+ *
+ * The records are written to a buffered writer, flushed at the end of the report.
+ */
+public abstract class RepositoryReportRecordWriter implements RepositoryReportWriter {
+
+    private static final Logger log = Logger.getLogger(RepositoryReportRecordWriter.class.getName());
+
+    private final Writer out;
+    private boolean failed;
+
+    /**
+     * Creates a writer printing the records on the standard output.
+     */
+    protected RepositoryReportRecordWriter() {
+        this(standardOutput());
+    }
+
+    protected RepositoryReportRecordWriter(Writer out) {
+        this.out = out;
+    }
+
+    private static Writer standardOutput() {
+        try {
+            // Write large blocks to System.out, which flushes and synchronizes on each call.
+            // System.out is redirected to the client when running in mh_daemon
+            return new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), 65536);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prints the record of an issue.
+     *
+     * @param issue the type of issue
+     * @param pom the path of the pom file, or null
+     * @param dependency the coordinates of the dependency, or null
+     * @param count the count associated with the issue, or -1
+     * @param message the text of the item
+     */
+    public void printRecord(String issue, String pom, String dependency, int count, String message) {
+        try {
+            writeRecord(out, issue, pom, dependency, count, message);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    protected abstract void writeRecord(Writer out, String issue, String pom, String dependency, int count, String message) throws IOException;
+
+    /**
+     * Writes the text printed before the records.
+     */
+    protected void writeHeader(Writer out) throws IOException {
+    }
+
+    public void printItem(String string) {
+    }
+
+    public void endItem() {
+    }
+
+    public void printSectionStart(String string) {
+    }
+
+    public void printSectionEnd() {
+    }
+
+    public void printStart() {
+        try {
+            writeHeader(out);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public void printEnd() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        // Report the first error only
+        if (!failed) {
+            failed = true;
+            log.log(Level.SEVERE, "Cannot write the report", e);
+        }
+    }
+}
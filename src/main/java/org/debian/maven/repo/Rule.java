@@ -30,10 +30,37 @@ public class Rule {
     /** Regexp matching a substitution expression like s/foo/bar/ */
     private static final Pattern SUBSTITUTION_PATTERN = Pattern.compile("s/([^/]*)/([^/]*)/?");
 
+    /** Characters with a special meaning in the regular expressions generated for the rules */
+    private static final String REGEX_CHARS = "*^|?+()[]\\";
+
+    /** Characters with a special meaning in the regular expressions of the substitutions */
+    private static final String SUBSTITUTION_REGEX_CHARS = ".*^$|?+()[]{}\\";
+
     private final Pattern pattern;
     private final String replace;
     private final String rule;
     private final String description;
+    /** The only value matched by this rule, or null if the rule can match several values */
+    private final String literal;
+    private final Kind kind;
+    /** Result of apply() when it doesn't depend on the value matched, or null */
+    private final String constantResult;
+    private final boolean generic;
+    private final boolean matchesNull;
+
+    /**
+     * Kind of rule, the first kinds are evaluated without using the regular expression.
+     */
+    private enum Kind {
+        /** Matches only one value */
+        LITERAL,
+        /** Matches any value */
+        MATCH_ALL,
+        /** Matches any value and replaces it with a constant */
+        CONSTANT_SUBSTITUTION,
+        /** Evaluated with the regular expression */
+        REGEX
+    }
 
     public Rule(String rule) {
         this(rule, "");
@@ -47,29 +74,89 @@ public class Rule {
         if ((matcher = SUBSTITUTION_PATTERN.matcher(rule)).matches()) {
             pattern = Pattern.compile(matcher.group(1));
             replace = matcher.group(2);
+            literal = containsAny(matcher.group(1), SUBSTITUTION_REGEX_CHARS) ? null : matcher.group(1);
         } else {
             String pat = escapeParameters(rule.replace(".", "\\.").replace("*", "(.*)"));
             pattern = Pattern.compile(pat);
             replace = escapeGroupMatch(rule).replace("*", "$1");
+            literal = containsAny(rule, REGEX_CHARS) ? null : rule;
+        }
+
+        String patternString = pattern.pattern();
+        matchesNull = ".*".equals(patternString) || "(.*)".equals(patternString);
+        generic = matchesNull || GENERIC_PATTERN.matcher(patternString).find();
+
+        boolean constantReplace = !containsAny(replace, "$\\");
+        if (literal != null && literal.length() > 0) {
+            kind = Kind.LITERAL;
+            if (!isSubstitution()) {
+                constantResult = literal;
+            } else {
+                constantResult = constantReplace ? replace : null;
+            }
+        } else if (matchesNull && constantReplace) {
+            kind = Kind.CONSTANT_SUBSTITUTION;
+            constantResult = replace;
+        } else if ("(.*)".equals(patternString) && "$1".equals(replace)) {
+            kind = Kind.MATCH_ALL;
+            constantResult = null;
+        } else {
+            kind = Kind.REGEX;
+            constantResult = null;
+        }
+    }
+
+    private static boolean containsAny(String value, String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (value.indexOf(chars.charAt(i)) >= 0) {
+                return true;
+            }
         }
+        return false;
     }
 
     public boolean match(String s) {
         if (s == null) {
-            return matchesNull();
+            return matchesNull;
+        }
+        if (kind == Kind.LITERAL) {
+            return literal.equals(s);
+        }
+        // '.' doesn't match the line terminators
+        if (matchesNull && !containsLineTerminator(s)) {
+            return true;
         }
         return pattern.matcher(s).matches();
     }
 
     public String apply(String s) {
         if (s == null) {
-            if (matchesNull()) {
+            if (matchesNull) {
                 if (!replace.contains("$1")) {
                     return replace;
                 }
             }
             return null;
         }
+        // The shortcuts are only valid when the rule matches the whole value,
+        // the partial matches keep the behaviour of the regular expression
+        switch (kind) {
+            case LITERAL:
+                if (constantResult != null && literal.equals(s)) {
+                    return constantResult;
+                }
+                break;
+            case MATCH_ALL:
+                if (s.length() > 0 && !containsLineTerminator(s)) {
+                    return s;
+                }
+                break;
+            case CONSTANT_SUBSTITUTION:
+                if (s.length() > 0 && !containsLineTerminator(s)) {
+                    return constantResult;
+                }
+                break;
+        }
         Matcher m = pattern.matcher(s);
         StringBuffer sb = new StringBuffer();
         while (m.find()) {
@@ -80,8 +167,18 @@ public class Rule {
         return sb.toString();
     }
 
+    private static boolean containsLineTerminator(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean isGeneric() {
-        return matchesNull() || GENERIC_PATTERN.matcher(pattern.pattern()).find();
+        return generic;
     }
 
     public boolean isSubstitution() {
@@ -89,8 +186,15 @@ public class Rule {
     }
 
     public boolean matchesNull() {
-        String patternString = pattern.pattern();
-        return ".*".equals(patternString) || "(.*)".equals(patternString);
+        return matchesNull;
+    }
+
+    /**
+     * Returns the only value matched by this rule, or null if the rule is a pattern
+     * which can match several values.
+     */
+    public String getLiteral() {
+        return literal;
     }
 
     public String getPattern() {
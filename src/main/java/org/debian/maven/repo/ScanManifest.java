@@ -0,0 +1,318 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.debian.maven.repo.POMInfo.DependencyType;
+
+/**
+ * Manifest of the poms found by the last scan of a repository, used to parse again only
+ * the poms which have changed since.
+ *
+ * Each pom file is recorded with its size, its modification time, the checksum of its
+ * content and the content of the pom as read from the file, without the management entries
+ * inherited from its parent. The files are identified by their canonical path.
+ *
+ * The manifest is a binary file written with a DataOutputStream:
+ * <pre>
+ * header: magic, version, base directory, number of poms
+ * pom:    path, size (long), modification time (long), checksum (long), pom
+ * </pre>
+ * The strings are written once: a string is either -1 for null, the int index of a string
+ * already written, or -2 followed by the length and the UTF-8 bytes of a new string.
+ */
+class ScanManifest {
+
+    private static final int MANIFEST_MAGIC = 0x4d48534d;
+    private static final int MANIFEST_VERSION = 1;
+    private static final DependencyType[] TYPES = DependencyType.values();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    static class Entry {
+        final long length;
+        final long lastModified;
+        final long checksum;
+        final POMInfo pom;
+
+        Entry(long length, long lastModified, long checksum, POMInfo pom) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.pom = pom;
+        }
+
+        /**
+         * Tells if the file has the same size and modification time as when the entry was recorded.
+         */
+        boolean isUnchanged(long length, long lastModified) {
+            return this.length == length && this.lastModified == lastModified;
+        }
+    }
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the CRC32 checksum of the content of the file.
+     */
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the manifest of the repository.
+     *
+     * @throws IOException if the manifest cannot be read, is invalid, or belongs to another repository
+     */
+    static ScanManifest load(File manifestFile, File baseDir) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)));
+        try {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+                throw new IOException("Invalid manifest " + manifestFile);
+            }
+            List<String> strings = new ArrayList<String>();
+            if (!baseDir.getPath().equals(readString(in, strings))) {
+                throw new IOException("The manifest " + manifestFile + " doesn't describe the repository in " + baseDir);
+            }
+            ScanManifest manifest = new ScanManifest();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in, strings);
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                long checksum = in.readLong();
+                manifest.put(path, new Entry(length, lastModified, checksum, readPom(in, strings)));
+            }
+            return manifest;
+        } finally {
+            in.close();
+        }
+    }
+
+    void save(File manifestFile, File baseDir) throws IOException {
+        if (manifestFile.getParentFile() != null) {
+            manifestFile.getParentFile().mkdirs();
+        }
+        File tmpFile = new File(manifestFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            Map<String, Integer> strings = new HashMap<String, Integer>();
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            writeString(out, strings, baseDir.getPath());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writeString(out, strings, entry.getKey());
+                out.writeLong(entry.getValue().length);
+                out.writeLong(entry.getValue().lastModified);
+                out.writeLong(entry.getValue().checksum);
+                writePom(out, strings, entry.getValue().pom);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(manifestFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename " + tmpFile + " to " + manifestFile);
+        }
+    }
+
+    private static void writePom(DataOutputStream out, Map<String, Integer> strings, POMInfo pom) throws IOException {
+        writeDependency(out, strings, pom.getThisPom());
+        writeDependency(out, strings, pom.getParent());
+        writeDependency(out, strings, pom.getOriginalPom());
+        writeString(out, strings, pom.getOriginalParentVersion());
+
+        List<String> modules = pom.getModules();
+        out.writeInt(modules == null ? -1 : modules.size());
+        if (modules != null) {
+            for (String module : modules) {
+                writeString(out, strings, module);
+            }
+        }
+
+        Map<String, String> properties = pom.getProperties();
+        out.writeInt(properties == null ? -1 : properties.size());
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                writeString(out, strings, property.getKey());
+                writeString(out, strings, property.getValue());
+            }
+        }
+
+        for (Map.Entry<DependencyType, List<Dependency>> entry : pom.getLocalDependencies().entrySet()) {
+            List<Dependency> dependencies = entry.getValue();
+            if (!dependencies.isEmpty()) {
+                out.writeInt(entry.getKey().ordinal());
+                out.writeInt(dependencies.size());
+                for (Dependency dependency : dependencies) {
+                    writeDependency(out, strings, dependency);
+                }
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    private static POMInfo readPom(DataInputStream in, List<String> strings) throws IOException {
+        POMInfo pom = new POMInfo();
+        pom.setThisPom(readDependency(in, strings));
+        pom.setParent(readDependency(in, strings));
+        pom.setOriginalPom(readDependency(in, strings));
+        pom.setOriginalParentVersion(readString(in, strings));
+
+        int count = in.readInt();
+        if (count >= 0) {
+            List<String> modules = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                modules.add(readString(in, strings));
+            }
+            pom.setModules(modules);
+        }
+
+        count = in.readInt();
+        if (count >= 0) {
+            Map<String, String> properties = new HashMap<String, String>(count * 2);
+            for (int i = 0; i < count; i++) {
+                properties.put(readString(in, strings), readString(in, strings));
+            }
+            pom.setProperties(properties);
+        }
+
+        DependencyMap dependencies = new DependencyMap();
+        int ordinal;
+        while ((ordinal = in.readInt()) >= 0) {
+            if (ordinal >= TYPES.length) {
+                throw new IOException("Invalid dependency type " + ordinal);
+            }
+            count = in.readInt();
+            List<Dependency> list = new ArrayList<Dependency>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(readDependency(in, strings));
+            }
+            dependencies.put(TYPES[ordinal], list);
+        }
+        pom.setDependencies(dependencies);
+        return pom;
+    }
+
+    private static void writeDependency(DataOutputStream out, Map<String, Integer> strings, Dependency dependency) throws IOException {
+        out.writeBoolean(dependency != null);
+        if (dependency == null) {
+            return;
+        }
+        writeString(out, strings, dependency.getGroupId());
+        writeString(out, strings, dependency.getArtifactId());
+        writeString(out, strings, dependency.getType());
+        writeString(out, strings, dependency.getVersion());
+        writeString(out, strings, dependency.getClassifier());
+        // Keep the scope undefined to inherit it from the management of the parent
+        writeString(out, strings, dependency.isScopeDefined() ? dependency.getScope() : null);
+        writeString(out, strings, dependency.getRelativePath());
+        writeString(out, strings, dependency.getSystemPath());
+        out.writeBoolean(dependency.isOptional());
+        out.writeBoolean(dependency.isSuperPom());
+    }
+
+    private static Dependency readDependency(DataInputStream in, List<String> strings) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Dependency.Builder()
+                .setGroupId(readString(in, strings))
+                .setArtifactId(readString(in, strings))
+                .setType(readString(in, strings))
+                .setVersion(readString(in, strings))
+                .setClassifier(readString(in, strings))
+                .setScope(readString(in, strings))
+                .setRelativePath(readString(in, strings))
+                .setSystemPath(readString(in, strings))
+                .setOptional(in.readBoolean())
+                .setSuperPom(in.readBoolean())
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        Integer id = strings.get(string);
+        if (id != null) {
+            out.writeInt(id);
+            return;
+        }
+        strings.put(string, strings.size());
+        byte[] encoded = string.getBytes("UTF-8");
+        out.writeInt(-2);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int id = in.readInt();
+        if (id == -1) {
+            return null;
+        }
+        if (id >= 0) {
+            if (id >= strings.size()) {
+                throw new IOException("Invalid string reference " + id);
+            }
+            return strings.get(id);
+        }
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        String string = new String(encoded, "UTF-8");
+        strings.add(string);
+        return string;
+    }
+}
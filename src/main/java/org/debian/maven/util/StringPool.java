@@ -0,0 +1,108 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of strings returning the same instance for equal strings, to share the groupIds,
+ * versions, types... read from many poms. The pools are thread-safe.
+ *
+ * Unlike String.intern(), a pool is meant to be used for a repository or a run of a tool,
+ * and is discarded with it.
+ */
+public abstract class StringPool {
+
+    /**
+     * Returns the instance of the pool equal to the value, adding the value to the pool if needed.
+     */
+    public abstract String intern(String value);
+
+    /**
+     * Returns the number of strings in the pool.
+     */
+    public abstract int size();
+
+    /**
+     * Returns a pool keeping at most maxSize strings. Once the pool is full, the strings
+     * not in the pool are returned as is.
+     */
+    public static StringPool bounded(int maxSize) {
+        return new BoundedStringPool(maxSize);
+    }
+
+    /**
+     * Returns a pool keeping the strings only as long as they are used outside of the pool.
+     */
+    public static StringPool weak() {
+        return new WeakStringPool();
+    }
+
+    private static class BoundedStringPool extends StringPool {
+
+        private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<String, String>();
+        private final int maxSize;
+
+        private BoundedStringPool(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            String pooled = strings.get(value);
+            if (pooled != null) {
+                return pooled;
+            }
+            if (strings.size() >= maxSize) {
+                return value;
+            }
+            pooled = strings.putIfAbsent(value, value);
+            return pooled != null ? pooled : value;
+        }
+
+        public int size() {
+            return strings.size();
+        }
+    }
+
+    private static class WeakStringPool extends StringPool {
+
+        private final Map<String, WeakReference<String>> strings = new WeakHashMap<String, WeakReference<String>>();
+
+        public synchronized String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+            WeakReference<String> reference = strings.get(value);
+            String pooled = reference != null ? reference.get() : null;
+            if (pooled != null) {
+                return pooled;
+            }
+            strings.put(value, new WeakReference<String>(value));
+            return value;
+        }
+
+        public synchronized int size() {
+            return strings.size();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.util;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * XMLStreamWriter forwarding all the events to several writers,
+ * used to write several documents from a single pass over the source.
+ *
+ * The read-only methods (getPrefix, getNamespaceContext, getProperty)
+ * are answered by the first writer.
+ */
+public class TeeXMLStreamWriter implements XMLStreamWriter {
+    private final XMLStreamWriter[] writers;
+
+    public TeeXMLStreamWriter(XMLStreamWriter... writers) {
+        this.writers = writers;
+    }
+
+    public XMLStreamWriter[] getWriters() {
+        return writers;
+    }
+
+    public void writeStartElement(String localName) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartElement(localName);
+        }
+    }
+
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartElement(namespaceURI, localName);
+        }
+    }
+
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartElement(prefix, localName, namespaceURI);
+        }
+    }
+
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEmptyElement(namespaceURI, localName);
+        }
+    }
+
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEmptyElement(prefix, localName, namespaceURI);
+        }
+    }
+
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEmptyElement(localName);
+        }
+    }
+
+    public void writeEndElement() throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEndElement();
+        }
+    }
+
+    public void writeEndDocument() throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEndDocument();
+        }
+    }
+
+    public void close() throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.close();
+        }
+    }
+
+    public void flush() throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.flush();
+        }
+    }
+
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeAttribute(localName, value);
+        }
+    }
+
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeAttribute(prefix, namespaceURI, localName, value);
+        }
+    }
+
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeAttribute(namespaceURI, localName, value);
+        }
+    }
+
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeNamespace(prefix, namespaceURI);
+        }
+    }
+
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeDefaultNamespace(namespaceURI);
+        }
+    }
+
+    public void writeComment(String data) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeComment(data);
+        }
+    }
+
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeProcessingInstruction(target);
+        }
+    }
+
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeProcessingInstruction(target, data);
+        }
+    }
+
+    public void writeCData(String data) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeCData(data);
+        }
+    }
+
+    public void writeDTD(String dtd) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeDTD(dtd);
+        }
+    }
+
+    public void writeEntityRef(String name) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeEntityRef(name);
+        }
+    }
+
+    public void writeStartDocument() throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartDocument();
+        }
+    }
+
+    public void writeStartDocument(String version) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartDocument(version);
+        }
+    }
+
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeStartDocument(encoding, version);
+        }
+    }
+
+    public void writeCharacters(String text) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeCharacters(text);
+        }
+    }
+
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.writeCharacters(text, start, len);
+        }
+    }
+
+    public String getPrefix(String uri) throws XMLStreamException {
+        return writers[0].getPrefix(uri);
+    }
+
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.setPrefix(prefix, uri);
+        }
+    }
+
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.setDefaultNamespace(uri);
+        }
+    }
+
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        for (XMLStreamWriter writer : writers) {
+            writer.setNamespaceContext(context);
+        }
+    }
+
+    public NamespaceContext getNamespaceContext() {
+        return writers[0].getNamespaceContext();
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return writers[0].getProperty(name);
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Records the events of a XMLStreamReader to read them again later without parsing the
+ * document a second time.
+ *
+ * The events are stored in arrays: the type of each event, the position of its first string
+ * and the number of namespaces and attributes of the start elements. The names of the elements,
+ * prefixes and namespaces are shared between the events.
+ */
+public class XMLEventBuffer {
+
+    private int size = 0;
+    private int[] types = new int[256];
+    private int[] starts = new int[256];
+    private int[] counts = new int[256];
+
+    private int stringCount = 0;
+    private String[] strings = new String[1024];
+    private final Map<String, String> names = new HashMap<String, String>();
+
+    /**
+     * Returns a reader recording in this buffer the events read from the source.
+     * Only the events read with next(), nextTag() or getElementText() are recorded.
+     */
+    public XMLStreamReader record(XMLStreamReader source) {
+        return new StreamReaderDelegate(source) {
+            public int next() throws XMLStreamException {
+                int event = super.next();
+                add(getParent());
+                return event;
+            }
+
+            public int nextTag() throws XMLStreamException {
+                int event = next();
+                while (event == XMLStreamConstants.SPACE || event == XMLStreamConstants.COMMENT
+                        || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                        || (event == XMLStreamConstants.CHARACTERS && isWhiteSpace())) {
+                    event = next();
+                }
+                if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+                    throw new XMLStreamException("Expected a start or end tag", getLocation());
+                }
+                return event;
+            }
+
+            public String getElementText() throws XMLStreamException {
+                StringBuilder text = new StringBuilder();
+                for (int event = next(); event != XMLStreamConstants.END_ELEMENT; event = next()) {
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        throw new XMLStreamException("Unexpected element in a text-only element", getLocation());
+                    }
+                    if (event != XMLStreamConstants.COMMENT && event != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                        text.append(getText());
+                    }
+                }
+                return text.toString();
+            }
+        };
+    }
+
+    /**
+     * Returns a reader going through the recorded events.
+     */
+    public XMLStreamReader replay() {
+        return new ReplayReader();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void add(XMLStreamReader reader) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        int type = reader.getEventType();
+        types[size] = type;
+        starts[size] = stringCount;
+        counts[size] = 0;
+        switch (type) {
+            case XMLStreamConstants.START_ELEMENT:
+                addName(reader.getLocalName());
+                addName(reader.getPrefix());
+                addName(reader.getNamespaceURI());
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    addName(reader.getNamespacePrefix(i));
+                    addName(reader.getNamespaceURI(i));
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    addName(reader.getAttributeNamespace(i));
+                    addName(reader.getAttributePrefix(i));
+                    addName(reader.getAttributeLocalName(i));
+                    addString(reader.getAttributeValue(i));
+                }
+                counts[size] = reader.getNamespaceCount() << 16 | reader.getAttributeCount();
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                addName(reader.getLocalName());
+                addName(reader.getPrefix());
+                addName(reader.getNamespaceURI());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                addName(reader.getLocalName());
+                addString(reader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                addString(reader.getPITarget());
+                addString(reader.getPIData());
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.DTD:
+                addString(reader.getText());
+                break;
+        }
+        size++;
+    }
+
+    private void addName(String name) {
+        if (name != null) {
+            String shared = names.get(name);
+            if (shared == null) {
+                names.put(name, name);
+            } else {
+                name = shared;
+            }
+        }
+        addString(name);
+    }
+
+    private void addString(String string) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount++] = string;
+    }
+
+    private class ReplayReader implements XMLStreamReader {
+
+        /** The current event, -1 before the first event */
+        private int current = -1;
+
+        private int type() {
+            return current < 0 ? XMLStreamConstants.START_DOCUMENT : types[current];
+        }
+
+        private String string(int index) {
+            return strings[starts[current] + index];
+        }
+
+        private int namespaceCount() {
+            return counts[current] >>> 16;
+        }
+
+        private int attributeString(int attribute, int index) {
+            return 3 + namespaceCount() * 2 + attribute * 4 + index;
+        }
+
+        private void checkStartElement() {
+            if (type() != XMLStreamConstants.START_ELEMENT) {
+                throw new IllegalStateException("Not a start element");
+            }
+        }
+
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        public int next() throws XMLStreamException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("End of the document reached");
+            }
+            current++;
+            return types[current];
+        }
+
+        public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+            if (type != getEventType()
+                    || (namespaceURI != null && !namespaceURI.equals(getNamespaceURI()))
+                    || (localName != null && !localName.equals(getLocalName()))) {
+                throw new XMLStreamException("Unexpected event " + getEventType());
+            }
+        }
+
+        public String getElementText() throws XMLStreamException {
+            StringBuilder text = new StringBuilder();
+            for (int event = next(); event != XMLStreamConstants.END_ELEMENT; event = next()) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    throw new XMLStreamException("Unexpected element in a text-only element");
+                }
+                if (event != XMLStreamConstants.COMMENT && event != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                    text.append(getText());
+                }
+            }
+            return text.toString();
+        }
+
+        public int nextTag() throws XMLStreamException {
+            int event = next();
+            while (event == XMLStreamConstants.SPACE || event == XMLStreamConstants.COMMENT
+                    || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                    || (event == XMLStreamConstants.CHARACTERS && isWhiteSpace())) {
+                event = next();
+            }
+            if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+                throw new XMLStreamException("Expected a start or end tag");
+            }
+            return event;
+        }
+
+        public boolean hasNext() {
+            return current + 1 < size;
+        }
+
+        public void close() {
+        }
+
+        public String getNamespaceURI(String prefix) {
+            if (type() == XMLStreamConstants.START_ELEMENT) {
+                for (int i = 0; i < namespaceCount(); i++) {
+                    String nsPrefix = getNamespacePrefix(i);
+                    if (prefix.equals(nsPrefix == null ? XMLConstants.DEFAULT_NS_PREFIX : nsPrefix)) {
+                        return getNamespaceURI(i);
+                    }
+                }
+            }
+            return null;
+        }
+
+        public boolean isStartElement() {
+            return type() == XMLStreamConstants.START_ELEMENT;
+        }
+
+        public boolean isEndElement() {
+            return type() == XMLStreamConstants.END_ELEMENT;
+        }
+
+        public boolean isCharacters() {
+            return type() == XMLStreamConstants.CHARACTERS;
+        }
+
+        public boolean isWhiteSpace() {
+            if (type() == XMLStreamConstants.SPACE) {
+                return true;
+            }
+            return type() == XMLStreamConstants.CHARACTERS && getText().trim().length() == 0;
+        }
+
+        public String getAttributeValue(String namespaceURI, String localName) {
+            checkStartElement();
+            for (int i = 0; i < getAttributeCount(); i++) {
+                if (localName.equals(getAttributeLocalName(i))
+                        && (namespaceURI == null || namespaceURI.equals(getAttributeNamespace(i)))) {
+                    return getAttributeValue(i);
+                }
+            }
+            return null;
+        }
+
+        public int getAttributeCount() {
+            checkStartElement();
+            return counts[current] & 0xFFFF;
+        }
+
+        public QName getAttributeName(int index) {
+            String namespace = getAttributeNamespace(index);
+            String prefix = getAttributePrefix(index);
+            return new QName(namespace == null ? XMLConstants.NULL_NS_URI : namespace, getAttributeLocalName(index),
+                    prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix);
+        }
+
+        public String getAttributeNamespace(int index) {
+            checkStartElement();
+            return string(attributeString(index, 0));
+        }
+
+        public String getAttributeLocalName(int index) {
+            checkStartElement();
+            return string(attributeString(index, 2));
+        }
+
+        public String getAttributePrefix(int index) {
+            checkStartElement();
+            return string(attributeString(index, 1));
+        }
+
+        public String getAttributeType(int index) {
+            checkStartElement();
+            return "CDATA";
+        }
+
+        public String getAttributeValue(int index) {
+            checkStartElement();
+            return string(attributeString(index, 3));
+        }
+
+        public boolean isAttributeSpecified(int index) {
+            checkStartElement();
+            return true;
+        }
+
+        public int getNamespaceCount() {
+            if (type() != XMLStreamConstants.START_ELEMENT) {
+                return 0;
+            }
+            return namespaceCount();
+        }
+
+        public String getNamespacePrefix(int index) {
+            checkStartElement();
+            return string(3 + index * 2);
+        }
+
+        public String getNamespaceURI(int index) {
+            checkStartElement();
+            return string(4 + index * 2);
+        }
+
+        public NamespaceContext getNamespaceContext() {
+            return new NamespaceContext() {
+                public String getNamespaceURI(String prefix) {
+                    return ReplayReader.this.getNamespaceURI(prefix);
+                }
+
+                public String getPrefix(String namespaceURI) {
+                    return null;
+                }
+
+                public Iterator<String> getPrefixes(String namespaceURI) {
+                    return Collections.<String>emptyList().iterator();
+                }
+            };
+        }
+
+        public int getEventType() {
+            return type();
+        }
+
+        public String getText() {
+            switch (type()) {
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    return string(1);
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.DTD:
+                    return string(0);
+                default:
+                    throw new IllegalStateException("No text for the event " + type());
+            }
+        }
+
+        public char[] getTextCharacters() {
+            return getText().toCharArray();
+        }
+
+        public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+            String text = getText();
+            int copied = Math.max(0, Math.min(length, text.length() - sourceStart));
+            text.getChars(sourceStart, sourceStart + copied, target, targetStart);
+            return copied;
+        }
+
+        public int getTextStart() {
+            return 0;
+        }
+
+        public int getTextLength() {
+            return getText().length();
+        }
+
+        public String getEncoding() {
+            return null;
+        }
+
+        public boolean hasText() {
+            switch (type()) {
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.DTD:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        public Location getLocation() {
+            return new Location() {
+                public int getLineNumber() {
+                    return -1;
+                }
+
+                public int getColumnNumber() {
+                    return -1;
+                }
+
+                public int getCharacterOffset() {
+                    return -1;
+                }
+
+                public String getPublicId() {
+                    return null;
+                }
+
+                public String getSystemId() {
+                    return null;
+                }
+            };
+        }
+
+        public QName getName() {
+            if (!hasName()) {
+                throw new IllegalStateException("No name for the event " + type());
+            }
+            String namespace = getNamespaceURI();
+            String prefix = getPrefix();
+            return new QName(namespace == null ? XMLConstants.NULL_NS_URI : namespace, getLocalName(),
+                    prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix);
+        }
+
+        public String getLocalName() {
+            if (type() == XMLStreamConstants.START_ELEMENT || type() == XMLStreamConstants.END_ELEMENT
+                    || type() == XMLStreamConstants.ENTITY_REFERENCE) {
+                return string(0);
+            }
+            throw new IllegalStateException("No local name for the event " + type());
+        }
+
+        public boolean hasName() {
+            return type() == XMLStreamConstants.START_ELEMENT || type() == XMLStreamConstants.END_ELEMENT;
+        }
+
+        public String getNamespaceURI() {
+            return hasName() ? string(2) : null;
+        }
+
+        public String getPrefix() {
+            return hasName() ? string(1) : null;
+        }
+
+        public String getVersion() {
+            return null;
+        }
+
+        public boolean isStandalone() {
+            return false;
+        }
+
+        public boolean standaloneSet() {
+            return false;
+        }
+
+        public String getCharacterEncodingScheme() {
+            return null;
+        }
+
+        public String getPITarget() {
+            return type() == XMLStreamConstants.PROCESSING_INSTRUCTION ? string(0) : null;
+        }
+
+        public String getPIData() {
+            return type() == XMLStreamConstants.PROCESSING_INSTRUCTION ? string(1) : null;
+        }
+    }
+}
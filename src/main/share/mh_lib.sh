@@ -8,6 +8,46 @@ MH_VERSION=${MH_VERSION:-1.7.1}
 CLASSPATH=/usr/share/java/stax-api.jar:/usr/share/java/stax.jar:/usr/share/java/xml-apis.jar:/usr/share/java/maven-repo-helper.jar
 JAVA_OPTIONS="-Djavax.xml.stream.XMLOutputFactory=com.bea.xml.stream.XMLOutputFactoryBase -Djavax.xml.stream.XMLInputFactory=com.bea.xml.stream.MXParserFactory"
 
+MH_DAEMON_FILE=${MH_DAEMON_FILE:-$HOME/.mh_daemon}
+# Set MH_REPO_INDEX to the location of an index of the Maven repository to avoid
+# reading all the POM files of the repository each time the repository is used
+MH_REPO_INDEX=${MH_REPO_INDEX:-}
+
+# Runs a Java tool of maven-repo-helper: runjava <main class> [args...]
+# The request is sent to mh_daemon if it is running, unless MH_NO_DAEMON is set,
+# otherwise a new JVM is started.
+runjava()
+{
+   local port token line status
+   if [ -z "$MH_NO_DAEMON" ] && [ -r "$MH_DAEMON_FILE" ]; then
+      read port token < "$MH_DAEMON_FILE"
+      if [ -n "$port" ] && { exec 3<>/dev/tcp/127.0.0.1/$port; } 2> /dev/null; then
+         {
+            echo "$token"
+            echo "run"
+            pwd
+            echo "$1"
+            shift
+            echo "$#"
+            for arg in "$@"; do
+               echo "$arg"
+            done
+         } >&3
+         status=1
+         while IFS= read -r line <&3; do
+            if [ "${line#MH_DAEMON_EXIT:}" != "$line" ]; then
+               status="${line#MH_DAEMON_EXIT:}"
+               break
+            fi
+            echo "$line"
+         done
+         exec 3<&-
+         return $status
+      fi
+   fi
+   java -cp $CLASSPATH $JAVA_OPTIONS "$@"
+}
+
 parseargs()
 {
    # clean arguments from a previous run
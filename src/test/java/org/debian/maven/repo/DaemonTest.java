@@ -0,0 +1,132 @@
+/*
+ * Copyright 2009 Ludovic Claude.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.debian.maven.repo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.debian.maven.TemporaryPomFolder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DaemonTest {
+
+    @Rule
+    public TemporaryPomFolder tmpDir = new TemporaryPomFolder();
+
+    @Test
+    public void testResolveArguments() throws Exception {
+        File workingDir = new File("/tmp/package");
+        String[] args = {"-v", "--package=libfoo-java", "-pfoo", "--rules=debian/maven.rules", "-udebian/maven.publishedRules",
+                "-R* * * s/.*/debian/ * *", "--maven-repo=/usr/share/maven-repo", "pom.xml", "/tmp/pom.properties", ""};
+        String[] expected = {"-v", "--package=libfoo-java", "-pfoo", "--rules=/tmp/package/debian/maven.rules",
+                "-u/tmp/package/debian/maven.publishedRules", "-R* * * s/.*/debian/ * *", "--maven-repo=/usr/share/maven-repo",
+                "/tmp/package/pom.xml", "/tmp/pom.properties", ""};
+        assertEquals(Arrays.asList(expected), Arrays.asList(Daemon.resolveArguments(POMCleaner.class.getName(), args, workingDir)));
+
+        // -i is a file for mh_cleanpom but an artifact for mh_checkrepo
+        assertEquals(Arrays.asList("-i/tmp/package/debian/maven.ignoreRules"),
+                Arrays.asList(Daemon.resolveArguments(POMCleaner.class.getName(), new String[] {"-idebian/maven.ignoreRules"}, workingDir)));
+        assertEquals(Arrays.asList("-r/tmp/package/repo", "-iorg.foo:bar", "--manifest=/tmp/package/repo.manifest"),
+                Arrays.asList(Daemon.resolveArguments(Repository.class.getName(),
+                        new String[] {"-rrepo", "-iorg.foo:bar", "--manifest=repo.manifest"}, workingDir)));
+    }
+
+    @Test
+    public void testRunAndStop() throws Exception {
+        File stateFile = new File(tmpDir.getRoot(), "mh_daemon");
+        final Daemon daemon = new Daemon(stateFile);
+        daemon.start();
+        assertTrue(stateFile.exists());
+        Thread server = new Thread() {
+            public void run() {
+                daemon.serve();
+            }
+        };
+        server.start();
+
+        List<String> output = request(daemon.getPort(), daemon.getToken(), "run", Repository.class.getName(), "--help");
+        assertTrue(output.contains("Purpose: Check content of a Maven repository."));
+        assertEquals(Daemon.EXIT_MARKER + 0, output.get(output.size() - 1));
+
+        // An invalid argument fails the command, not the daemon
+        output = request(daemon.getPort(), daemon.getToken(), "run", Repository.class.getName(),
+                "-r" + tmpDir.getRoot().getAbsolutePath(), "-iorg.foo");
+        assertTrue(output.contains("Invalid artifact org.foo, expected groupId:artifactId"));
+        assertEquals(Daemon.EXIT_MARKER + 1, output.get(output.size() - 1));
+
+        // The errors logged by the tool are sent to the client and fail the command
+        output = request(daemon.getPort(), daemon.getToken(), "run", POMCleaner.class.getName(),
+                "missing.pom", "target/pom.xml", "target/pom.properties");
+        assertTrue(output.toString(), output.toString().contains("missing.pom"));
+        assertEquals(Daemon.EXIT_MARKER + 1, output.get(output.size() - 1));
+
+        // The structured reports are sent to the client
+        output = request(daemon.getPort(), daemon.getToken(), "run", Repository.class.getName(),
+                "-r" + tmpDir.getRoot().getAbsolutePath(), "-ocsv");
+        assertEquals("issue,pom,dependency,count,message", output.get(0));
+        assertEquals(Daemon.EXIT_MARKER + 0, output.get(output.size() - 1));
+
+        // The poms cached by a request are not used by the next ones
+        POMReader.getCache().put(new File(tmpDir.getRoot(), "foo.pom"), 1, 1, POMReader.HEADER_SECTIONS, new POMInfo());
+        output = request(daemon.getPort(), daemon.getToken(), "run", Repository.class.getName(), "--help");
+        assertEquals(Daemon.EXIT_MARKER + 0, output.get(output.size() - 1));
+        assertEquals(0, POMReader.getCache().size());
+
+        output = request(daemon.getPort(), "wrong token", "run", Repository.class.getName(), "--help");
+        assertEquals(Daemon.EXIT_MARKER + 1, output.get(output.size() - 1));
+
+        output = request(daemon.getPort(), daemon.getToken(), "run", "java.lang.System");
+        assertEquals(Daemon.EXIT_MARKER + 1, output.get(output.size() - 1));
+
+        assertTrue(Daemon.stop(stateFile));
+        server.join(10000);
+        assertFalse(server.isAlive());
+        assertFalse(stateFile.exists());
+    }
+
+    private List<String> request(int port, String token, String command, String mainClass, String... args) throws Exception {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8");
+        out.println(token);
+        out.println(command);
+        out.println(tmpDir.getRoot().getAbsolutePath());
+        out.println(mainClass);
+        out.println(args.length);
+        for (String arg : args) {
+            out.println(arg);
+        }
+        List<String> lines = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lines.add(line);
+        }
+        socket.close();
+        return lines;
+    }
+}
@@ -16,11 +16,16 @@
 
 package org.debian.maven.repo;
 
+import java.util.Set;
+import java.util.TreeSet;
+
 import org.junit.Test;
 
 import static org.debian.maven.repo.DependencyRuleSet.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class DependencyRuleTest {
@@ -64,6 +69,45 @@ public class DependencyRuleTest {
     /**
      * Test of compareTo method, of class DependencyRule.
      */
+    @Test
+    public void testApplyWithoutChange() {
+        Dependency dependency = new Dependency("org.foo", "foo", "jar", "1.0", "compile", false, "", null);
+        assertSame(dependency, new DependencyRule("org.foo * * *").apply(dependency));
+        assertSame(dependency, new DependencyRule("org.foo foo jar s/1.0/1.0/").apply(dependency));
+        assertSame(dependency, dependency.applyRules(new TreeSet<DependencyRule>()));
+
+        Dependency changed = new DependencyRule("org.foo * * s/.*/debian/").apply(dependency);
+        assertNotSame(dependency, changed);
+        assertEquals("debian", changed.getVersion());
+        assertEquals("1.0", dependency.getVersion());
+
+        // The rules set the default scope on the dependencies without scope
+        Dependency noScope = new Dependency("org.foo", "foo", "jar", "1.0");
+        Dependency scoped = new DependencyRule("org.foo * * * * *").apply(noScope);
+        assertNotSame(noScope, scoped);
+        assertTrue(scoped.isScopeDefined());
+        assertEquals("runtime", scoped.getScope());
+        assertFalse(noScope.isScopeDefined());
+        assertEquals("test", new DependencyRule("org.foo * * * * s/runtime/test/").apply(noScope).getScope());
+    }
+
+    @Test
+    public void testCoordinate() {
+        Dependency jar = new Dependency("org.foo", "foo", "jar", "1.0");
+        Dependency bundle = new Dependency("org.foo", "foo", "bundle", "1.0");
+        Dependency sources = new Dependency("org.foo", "foo", "jar", "1.0", null, false, "sources", null);
+        assertEquals(jar.getCoordinate(), bundle.getCoordinate());
+        assertEquals(jar.hashCode(), bundle.hashCode());
+        assertFalse(jar.getCoordinate().equals(sources.getCoordinate()));
+        assertFalse(jar.hashCode() == sources.hashCode());
+
+        // The coordinates follow the changes of the dependency
+        Coordinate coordinate = jar.getCoordinate();
+        jar.setVersion("1.1");
+        assertEquals("1.0", coordinate.getVersion());
+        assertEquals(new Coordinate("org.foo", "foo", "jar", "1.1", null), jar.getCoordinate());
+    }
+
     @Test
     public void testCompareTo() {
         DependencyRule generic = new DependencyRule("");
@@ -88,6 +132,39 @@ public class DependencyRuleTest {
         assertTrue(rule2.compareTo(rule1) < 0);
     }
 
+    @Test
+    public void testIndexedRuleSet() {
+        String[] ruleDefinitions = {"", "* * maven-plugin * * *", "javax.servlet * * 2.3", "javax.servlet servlet-api * s/2\\..*/2.x/",
+                "log4j log4j jar s/1\\.2\\..*/1.2.x/", "* junit * s/3\\..*/3.x/", "s/commons-(.*)/org.apache.commons.$1/ * * *",
+                "s/javax.servlet/servlet/ s/servlet-api/api/ * *", "org.foo(bar) * * *"};
+        Set<DependencyRule> rules = new TreeSet<DependencyRule>();
+        IndexedRuleSet indexedRules = new IndexedRuleSet();
+        for (String ruleDefinition : ruleDefinitions) {
+            rules.add(new DependencyRule(ruleDefinition));
+            indexedRules.add(new DependencyRule(ruleDefinition));
+        }
+
+        Dependency[] dependencies = {
+                new Dependency("javax.servlet", "servlet-api", "jar", "2.3"),
+                new Dependency("javax.servlet", "servlet-api", "jar", "2.5"),
+                new Dependency("javax.servlet", "jsp-api", "jar", "2.1"),
+                new Dependency("log4j", "log4j", "jar", "1.2.16"),
+                new Dependency("junit", "junit", "jar", "3.8.2"),
+                new Dependency("commons-io", "commons-io", "jar", "2.0"),
+                new Dependency("org.foobar", "foo", "jar", "1.0"),
+                new Dependency("org.apache.maven.plugins", "maven-jar-plugin", "maven-plugin", "2.3"),
+                new Dependency(null, "junit", "jar", null)};
+        for (Dependency dependency : dependencies) {
+            assertEquals(dependency.toString(), dependency.findMatchingRule(rules), dependency.findMatchingRule(indexedRules));
+        }
+
+        // The index is rebuilt after a modification
+        rules.remove(new DependencyRule("javax.servlet * * 2.3"));
+        indexedRules.remove(new DependencyRule("javax.servlet * * 2.3"));
+        assertEquals(new DependencyRule("s/javax.servlet/servlet/ s/servlet-api/api/ * *"), dependencies[0].findMatchingRule(indexedRules));
+        assertEquals(dependencies[0].findMatchingRule(rules), dependencies[0].findMatchingRule(indexedRules));
+    }
+
     @Test
     public void testEquals() {
         DependencyRule mavenPlugin = new DependencyRule("* * maven-plugin * * *");
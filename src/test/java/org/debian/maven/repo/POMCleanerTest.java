@@ -18,6 +18,7 @@ package org.debian.maven.repo;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Properties;
 
@@ -319,6 +320,67 @@ public class POMCleanerTest {
         assertEquals("debian", pomInfo.get("debianVersion"));
     }
 
+    @Test
+    public void testCleanPoms() throws Exception {
+        tmpDir.copyResource("plexus-archiver.pom", new File(tmpDir.newFolder("plexus-archiver"), "pom.xml"));
+        File poms = tmpDir.newFile("libplexus-archiver-java.poms");
+        FileWriter out = new FileWriter(poms);
+        // The package given to the cleaner is used, not the package of the pom in the list
+        out.write("plexus-archiver/pom.xml --no-parent --has-package-version --package=libplexus-archiver-java-doc\n");
+        out.close();
+        ListOfPOMs listOfPOMs = new ListOfPOMs(poms);
+        listOfPOMs.setBaseDir(tmpDir.getRoot());
+        File targetDir = tmpDir.newFolder("cleaned");
+
+        instance.getRulesFiles().addDefaultRules();
+        instance.cleanPoms(listOfPOMs, targetDir, false, null, "libplexus-archiver-java");
+
+        File pomTargetDir = new File(targetDir, "plexus-archiver/pom.xml");
+        assertXMLEqual(tmpDir.read("plexus-archiver.cleaned"), tmpDir.read(new File(pomTargetDir, "pom.xml")));
+        Properties pomInfo = new Properties();
+        pomInfo.load(new FileInputStream(new File(pomTargetDir, "pom.properties")));
+        assertEquals("org.codehaus.plexus", pomInfo.get("groupId"));
+        assertEquals("plexus-archiver", pomInfo.get("artifactId"));
+        assertEquals("1.0-alpha-12", pomInfo.get("version"));
+        assertEquals("debian", pomInfo.get("debianVersion"));
+
+        POMInfo keptPom = new POMReader().readPom(new File(pomTargetDir, "pom.xml.keep"));
+        assertEquals("1.0-alpha-12", keptPom.getThisPom().getVersion());
+        pomInfo = new Properties();
+        pomInfo.load(new FileInputStream(new File(pomTargetDir, "pom.properties.keep")));
+        assertEquals("1.0-alpha-12", pomInfo.get("version"));
+        assertEquals("debian", pomInfo.get("debianVersion"));
+    }
+
+    @Test
+    public void testCleanPomWithKeptVersionVariant() throws Exception {
+        File pom = tmpDir.usePom("plexus-archiver.pom");
+        File targetDir = tmpDir.newFolder("cleaned");
+
+        POMCleaner separateCleaner = new POMCleaner();
+        separateCleaner.getRulesFiles().addDefaultRules();
+        separateCleaner.cleanPom(pom, new File(targetDir, "separate.xml"), new File(targetDir, "separate.properties"),
+                true, true, false, false, null, "libplexus-archiver-java");
+        separateCleaner = new POMCleaner();
+        separateCleaner.getRulesFiles().addDefaultRules();
+        separateCleaner.cleanPom(pom, new File(targetDir, "separate.xml.keep"), new File(targetDir, "separate.properties.keep"),
+                true, true, true, false, null, "libplexus-archiver-java");
+
+        instance.getRulesFiles().addDefaultRules();
+        instance.cleanPom(pom, new File(targetDir, "pom.xml"), new File(targetDir, "pom.properties"),
+                new File(targetDir, "pom.xml.keep"), new File(targetDir, "pom.properties.keep"),
+                true, true, false, false, null, "libplexus-archiver-java");
+
+        assertXMLEqual(tmpDir.read("plexus-archiver.cleaned"), tmpDir.read(new File(targetDir, "pom.xml")));
+        assertXMLEqual(tmpDir.read(new File(targetDir, "separate.xml")), tmpDir.read(new File(targetDir, "pom.xml")));
+        assertXMLEqual(tmpDir.read(new File(targetDir, "separate.xml.keep")), tmpDir.read(new File(targetDir, "pom.xml.keep")));
+
+        Properties pomInfo = new Properties();
+        pomInfo.load(new FileInputStream(new File(targetDir, "pom.properties.keep")));
+        assertEquals("1.0-alpha-12", pomInfo.get("version"));
+        assertEquals("debian", pomInfo.get("debianVersion"));
+    }
+
     @Test
     public void testMain() throws Exception {
         specialDependencies = tmpDir.newFile("special-cases.txt");
@@ -16,8 +16,16 @@
 
 package org.debian.maven.repo;
 
+import java.io.File;
+import java.io.StringReader;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 import org.debian.maven.TemporaryPomFolder;
 import org.debian.maven.repo.POMReader.TreePath;
+import org.debian.maven.util.StringPool;
+import org.debian.maven.util.XMLEventBuffer;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -29,6 +37,229 @@ public class POMReaderTest {
     @Rule
     public TemporaryPomFolder tmpDir = new TemporaryPomFolder();
 
+    @Test
+    public void testReadReplayedEvents() throws Exception {
+        POMReader instance = new POMReader();
+        XMLEventBuffer events = new XMLEventBuffer();
+        POMInfo info = instance.readPom(events.record(instance.factory.createXMLStreamReader(tmpDir.read("maven.xml"))));
+        POMInfo replayedInfo = instance.readPom(events.replay());
+
+        assertEquals(info.getThisPom(), replayedInfo.getThisPom());
+        assertEquals(info.getParent(), replayedInfo.getParent());
+        assertEquals(info.getProperties(), replayedInfo.getProperties());
+        assertEquals(info.getModules(), replayedInfo.getModules());
+        assertEquals(info.getDependencies(), replayedInfo.getDependencies());
+    }
+
+    @Test
+    public void testReadSections() throws Exception {
+        POMReader instance = new POMReader();
+        File pom = tmpDir.usePom("maven.xml");
+        POMInfo header = instance.readPom(pom, POMReader.HEADER_SECTIONS);
+        POMInfo info = instance.readPom(pom);
+
+        assertEquals(info.getThisPom(), header.getThisPom());
+        assertEquals(info.getParent(), header.getParent());
+        assertEquals(info.getProperties(), header.getProperties());
+        assertTrue(header.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).isEmpty());
+        assertTrue(header.getDependencies().get(PLUGINS).isEmpty());
+
+        POMInfo dependencyManagement = instance.readPom(pom,
+                EnumSet.of(POMReader.Section.COORDINATES, POMReader.Section.PROPERTIES, POMReader.Section.DEPENDENCY_MANAGEMENT));
+        assertEquals(info.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST), dependencyManagement.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST));
+    }
+
+    @Test
+    public void testReadSectionsStopsAfterLastSection() throws Exception {
+        POMReader instance = new POMReader();
+        // The document is truncated after the header, a complete read would fail
+        String pom = "<project><modelVersion>4.0.0</modelVersion>"
+                + "<parent><groupId>org.foo</groupId><artifactId>foo-parent</artifactId><version>1.0</version></parent>"
+                + "<artifactId>foo</artifactId><version>${foo.version}</version><packaging>jar</packaging>"
+                + "<properties><foo.version>1.2</foo.version></properties>"
+                + "<description>Foo</description><groupId>org.foo.bar</groupId><dependencies><dependency>";
+        POMInfo info = instance.readPom(instance.factory.createXMLStreamReader(new StringReader(pom)), POMReader.HEADER_SECTIONS);
+
+        assertEquals(new Dependency("org.foo.bar", "foo", "jar", "1.2"), info.getThisPom());
+        assertEquals(new Dependency("org.foo", "foo-parent", "pom", "1.0"), info.getParent());
+        assertEquals("1.2", info.getProperties().get("foo.version"));
+    }
+
+    @Test
+    public void testReadSectionsWithElementsAfterName() throws Exception {
+        POMReader instance = new POMReader();
+        // The packaging and the properties come after elements outside the sections
+        String pom = "<project><groupId>org.foo</groupId><artifactId>foo</artifactId><version>${foo.version}</version>"
+                + "<name>Foo</name><url>http://foo.org</url><packaging>pom</packaging>"
+                + "<properties><foo.version>1.2</foo.version><bar.version>2.0</bar.version></properties>"
+                + "<dependencies><dependency><groupId>org.bar</groupId><artifactId>bar</artifactId></dependency></dependencies></project>";
+        POMInfo info = instance.readPom(instance.factory.createXMLStreamReader(new StringReader(pom)), POMReader.HEADER_SECTIONS);
+        POMInfo fullInfo = instance.readPom(instance.factory.createXMLStreamReader(new StringReader(pom)));
+
+        assertEquals(new Dependency("org.foo", "foo", "pom", "1.2"), info.getThisPom());
+        assertEquals(fullInfo.getThisPom(), info.getThisPom());
+        assertEquals(fullInfo.getProperties(), info.getProperties());
+        assertEquals("2.0", info.getProperties().get("bar.version"));
+    }
+
+    @Test
+    public void testExpandProperties() throws Exception {
+        POMReader instance = new POMReader();
+        String pom = "<project><groupId>org.foo</groupId><artifactId>foo</artifactId><version>${foo.version}</version>"
+                + "<properties><foo.version>${major}.${minor}</foo.version><major>1</major><minor>2</minor>"
+                + "<loop>${loop.back}</loop><loop.back>-${loop}</loop.back></properties>"
+                + "<dependencies>"
+                + "<dependency><groupId>${project.groupId}</groupId><artifactId>bar</artifactId><version>${project.version}</version></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>baz</artifactId><version>${unknown}-${major}</version></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>loop</artifactId><version>${loop}</version></dependency>"
+                + "</dependencies></project>";
+        POMInfo info = instance.readPom(new StringReader(pom));
+
+        assertEquals("1.2", info.getThisPom().getVersion());
+        List<Dependency> dependencies = info.getDependencies().get(DEPENDENCIES);
+        assertEquals(new Dependency("org.foo", "bar", "jar", "1.2"), dependencies.get(0));
+        assertEquals("${unknown}-1", dependencies.get(1).getVersion());
+        assertEquals("-${loop}", dependencies.get(2).getVersion());
+    }
+
+    @Test
+    public void testManagedVersions() throws Exception {
+        POMReader instance = new POMReader();
+        POMInfo parent = instance.readPom(new StringReader("<project><groupId>org.foo</groupId><artifactId>parent</artifactId><version>1</version>"
+                + "<dependencyManagement><dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>a</artifactId><version>1.0</version><scope>test</scope></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>b</artifactId><version>2.0</version></dependency>"
+                + "</dependencies></dependencyManagement></project>"));
+        POMInfo child = instance.readPom(new StringReader("<project><parent><groupId>org.foo</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+                + "<artifactId>child</artifactId>"
+                + "<dependencyManagement><dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>b</artifactId><version>2.1</version></dependency>"
+                + "</dependencies></dependencyManagement>"
+                + "<dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>a</artifactId></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>b</artifactId><scope>runtime</scope></dependency>"
+                + "</dependencies></project>"));
+        child.setParentPOM(parent);
+
+        List<Dependency> dependencies = child.getDependencies().get(DEPENDENCIES);
+        assertEquals("1.0", dependencies.get(0).getVersion());
+        assertEquals("test", dependencies.get(0).getScope());
+        assertEquals("2.1", dependencies.get(1).getVersion());
+        assertEquals("runtime", dependencies.get(1).getScope());
+        List<Dependency> management = child.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST);
+        assertEquals(2, management.size());
+        assertEquals("2.1", management.get(0).getVersion());
+        // The entries inherited from the parent are shared until the list is modified
+        assertSame(parent.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).get(0), management.get(1));
+        management.set(1, new Dependency("org.foo", "a", "jar", "1.1"));
+        assertEquals("1.0", parent.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).get(0).getVersion());
+        assertEquals("1.1", child.getVersionFromManagementDependency(new Dependency("org.foo", "a", "jar", null)));
+
+        assertEquals("2.1", child.getVersionFromManagementDependency(new Dependency("org.foo", "b", "bundle", null)));
+        assertNull(child.getVersionFromManagementDependency(new Dependency("org.foo", "c", "jar", null)));
+        parent.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).add(new Dependency("org.foo", "c", "jar", "3.0"));
+        assertEquals("3.0", child.getVersionFromManagementDependency(new Dependency("org.foo", "c", "jar", null)));
+
+        // The entries of another parent are added to the entries already merged
+        POMInfo otherParent = instance.readPom(new StringReader("<project><groupId>org.foo</groupId><artifactId>other</artifactId><version>1</version>"
+                + "<dependencyManagement><dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>a</artifactId><version>4.0</version></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>d</artifactId><version>4.0</version></dependency>"
+                + "</dependencies></dependencyManagement></project>"));
+        child.setParentPOM(otherParent);
+        child.setParentPOM(otherParent);
+        management = child.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST);
+        assertEquals(3, management.size());
+        assertEquals("2.1", child.getVersionFromManagementDependency(new Dependency("org.foo", "b", "jar", null)));
+        assertEquals("1.1", child.getVersionFromManagementDependency(new Dependency("org.foo", "a", "jar", null)));
+        assertEquals("4.0", child.getVersionFromManagementDependency(new Dependency("org.foo", "d", "jar", null)));
+
+        // The same with the entries of both parents still shared
+        POMInfo otherChild = instance.readPom(new StringReader("<project><artifactId>other-child</artifactId>"
+                + "<dependencyManagement><dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>b</artifactId><version>2.1</version></dependency>"
+                + "</dependencies></dependencyManagement></project>"));
+        otherChild.setParentPOM(parent);
+        otherChild.setParentPOM(otherParent);
+        management = otherChild.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST);
+        assertEquals(4, management.size());
+        assertEquals("1.0", otherChild.getVersionFromManagementDependency(new Dependency("org.foo", "a", "jar", null)));
+        assertEquals("3.0", otherChild.getVersionFromManagementDependency(new Dependency("org.foo", "c", "jar", null)));
+        assertSame(otherParent.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).get(1), management.get(3));
+    }
+
+    @Test
+    public void testSharedCoordinates() throws Exception {
+        POMReader instance = new POMReader();
+        instance.setStringPool(StringPool.weak());
+        POMInfo info = instance.readPom(new StringReader("<project><groupId>org.foo</groupId><artifactId>foo</artifactId><version>1.0</version>"
+                + "<dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>bar</artifactId><version>${project.version}</version></dependency>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>baz</artifactId><version>1.0</version><scope>test</scope></dependency>"
+                + "</dependencies></project>"));
+        List<Dependency> dependencies = info.getDependencies().get(DEPENDENCIES);
+        assertSame(info.getThisPom().getGroupId(), dependencies.get(0).getGroupId());
+        assertSame(dependencies.get(0).getGroupId(), dependencies.get(1).getGroupId());
+        assertSame(dependencies.get(0).getVersion(), dependencies.get(1).getVersion());
+        assertSame(dependencies.get(0).getType(), dependencies.get(1).getType());
+        assertSame(instance.getStringPool().intern(new String("test")), dependencies.get(1).getScope());
+    }
+
+    @Test
+    public void testSparseDependencies() throws Exception {
+        POMReader instance = new POMReader();
+        POMInfo info = instance.readPom(new StringReader("<project><groupId>org.foo</groupId><artifactId>foo</artifactId><version>1.0</version>"
+                + "<properties><b>2</b><a>1</a></properties>"
+                + "<dependencies>"
+                + "<dependency><groupId>org.foo</groupId><artifactId>bar</artifactId><version>1.0</version></dependency>"
+                + "</dependencies></project>"));
+        assertEquals(POMInfo.DependencyType.values().length, info.getDependencies().size());
+        assertEquals(1, info.getDependencies().get(DEPENDENCIES).size());
+        assertTrue(info.getDependencies().get(PLUGINS).isEmpty());
+        assertSame(info.getDependencies().get(PLUGINS), info.getDependencies().get(PLUGINS));
+
+        // The list of a type without dependencies is created on the first addition
+        List<Dependency> plugins = info.getDependencies().get(PLUGINS);
+        plugins.add(new Dependency("org.foo", "foo-plugin", "maven-plugin", "1.0"));
+        assertEquals(1, info.getDependencies().get(PLUGINS).size());
+        assertEquals(1, plugins.size());
+        info.getDependencies().get(DEPENDENCY_MANAGEMENT_LIST).add(new Dependency("org.foo", "baz", "jar", "2.0"));
+        assertEquals("2.0", info.getVersionFromManagementDependency(new Dependency("org.foo", "baz", "jar", null)));
+
+        assertEquals("1", info.getProperties().get("a"));
+        assertEquals("2", info.getProperties().get("b"));
+    }
+
+    @Test
+    public void testReadCachedPom() throws Exception {
+        POMReader instance = new POMReader();
+        POMCache cache = POMReader.getCache();
+        File pom = tmpDir.usePom("maven.xml");
+
+        // The cache is disabled by default
+        cache.clear();
+        instance.readPom(pom);
+        assertEquals(0, cache.size());
+
+        instance.setUseCache(true);
+        long hits = cache.getHits();
+
+        POMInfo info = instance.readPom(pom);
+        info.getThisPom().setVersion("changed");
+        POMInfo cachedHeader = instance.readPom(pom, POMReader.HEADER_SECTIONS);
+        POMInfo cachedInfo = instance.readPom(pom);
+        assertEquals(hits + 2, cache.getHits());
+        assertEquals("2.1.0-SNAPSHOT", cachedHeader.getThisPom().getVersion());
+        assertEquals(cachedHeader.getDependencies(), cachedInfo.getDependencies());
+        assertNotSame(cachedHeader.getDependencies().get(DEPENDENCIES), cachedInfo.getDependencies().get(DEPENDENCIES));
+
+        // A modified file is parsed again
+        String content = FileUtils.readFileToString(pom, "UTF-8");
+        FileUtils.writeStringToFile(pom, content.replace("<version>2.1.0-SNAPSHOT</version>", "<version>2.1.1</version>"), "UTF-8");
+        assertEquals("2.1.1", instance.readPom(pom).getThisPom().getVersion());
+        assertEquals(hits + 2, cache.getHits());
+    }
+
     /**
      * Test of cleanPom method, of class POMReader.
      */
@@ -405,6 +636,48 @@ public class POMReaderTest {
         assertFalse(path.matches("/d"));
     }
 
+    @Test
+    public void testTreePathMatchDependencyType() {
+        TreePath<String> path = new TreePath<String>();
+        for (String element : "project/build/pluginManagement/plugins/plugin".split("/")) {
+            path.add(element);
+        }
+        assertEquals(PLUGIN_MANAGEMENT, path.match());
+        assertTrue(path.contains("plugin"));
+
+        path.add("dependencies");
+        path.add("dependency");
+        assertEquals(PLUGIN_MANAGEMENT_DEPENDENCIES, path.match());
+        path.remove();
+        assertNull(path.match());
+        path.remove();
+        path.remove();
+        assertFalse(path.contains("plugin"));
+
+        path.add("plugin");
+        assertEquals(PLUGIN_MANAGEMENT, path.match());
+        assertTrue(path.contains("plugin"));
+
+        // The anchored patterns match from the root only
+        path = new TreePath<String>();
+        for (String element : "project/dependencies/dependency".split("/")) {
+            path.add(element);
+        }
+        assertEquals(DEPENDENCIES, path.match());
+        path = new TreePath<String>();
+        for (String element : "project/profiles/profile/dependencies/dependency".split("/")) {
+            path.add(element);
+        }
+        assertEquals(PROFILE_DEPENDENCIES, path.match());
+
+        // Deep paths
+        for (int i = 0; i < 20; i++) {
+            path.add("configuration");
+        }
+        path.add("plugin");
+        assertEquals(PLUGINS, path.match());
+    }
+
     /**
      * Ensures all modules are properly parsed, including those defined in a profile.
      */
@@ -18,17 +18,29 @@ package org.debian.maven.repo;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.io.FileUtils;
 import org.debian.maven.TemporaryPomFolder;
 import org.debian.maven.repo.DependencyRuleSetFiles.RulesType;
 import org.junit.Test;
 import org.junit.Rule;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.debian.maven.repo.POMInfo.DependencyType.DEPENDENCIES;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class RepositoryTest {
 
@@ -53,6 +65,84 @@ public class RepositoryTest {
         assertEquals(pom, repo.searchMatchingPOM(dependency));
     }
 
+    @Test
+    public void testParallelScan() throws Exception {
+        Repository repo = getRepository();
+        repo.scan();
+
+        Repository parallelRepo = getRepository();
+        parallelRepo.setScanThreads(4);
+        parallelRepo.scan();
+
+        assertEquals(repo.getResolvedPoms().keySet(), parallelRepo.getResolvedPoms().keySet());
+        assertEquals(repo.getUnresolvedPoms().keySet(), parallelRepo.getUnresolvedPoms().keySet());
+        assertEquals(repo.getPomsWithMissingParent().keySet(), parallelRepo.getPomsWithMissingParent().keySet());
+        assertEquals(repo.getPomsWithMissingVersions().keySet(), parallelRepo.getPomsWithMissingVersions().keySet());
+
+        Dependency dependency = new Dependency("org.apache.ant", "ant-apache-bcel", "jar", "debian");
+        assertEquals(repo.getPOM(dependency).getDependencies(), parallelRepo.getPOM(dependency).getDependencies());
+    }
+
+    @Test
+    public void testParentCycleAndMissingParent() throws Exception {
+        File baseDir = tmpDir.newFolder("repository");
+        File a = writePom(baseDir, "a", "b");
+        File b = writePom(baseDir, "b", "a");
+        File c = writePom(baseDir, "c", "a");
+        File d = writePom(baseDir, "d", "missing");
+        File e = writePom(baseDir, "e", "d");
+        File f = writePom(baseDir, "f", "g");
+        File g = writePom(baseDir, "g", null);
+
+        Repository repo = new Repository(baseDir);
+        repo.scan();
+
+        assertEquals(new HashSet<File>(Arrays.asList(a, b)), repo.getPomsWithParentCycle().keySet());
+        assertEquals(new HashSet<File>(Arrays.asList(d)), repo.getPomsWithMissingParent().keySet());
+        assertEquals(new HashSet<File>(Arrays.asList(a, b, c, d, e)), repo.getUnresolvedPoms().keySet());
+        assertEquals(new HashSet<File>(Arrays.asList(f, g)), repo.getResolvedPoms().keySet());
+    }
+
+    @Test
+    public void testScanSymbolicLinks() throws Exception {
+        File baseDir = tmpDir.newFolder("repository");
+        File versionDir = new File(baseDir, "1.0");
+        versionDir.mkdirs();
+        File pom = writePom(versionDir, "a", null);
+        symlink("1.0", new File(baseDir, "debian"));
+        symlink("..", new File(versionDir, "loop"));
+
+        for (int threads = 1; threads <= 2; threads++) {
+            Repository repo = new Repository(baseDir);
+            repo.setScanThreads(threads);
+            repo.scan();
+
+            // The physical file is parsed once, the loop is skipped
+            File linkedPom = new File(new File(baseDir, "debian"), "a.pom");
+            assertEquals(new HashSet<File>(Arrays.asList(pom, linkedPom)), repo.getResolvedPoms().keySet());
+            assertTrue(repo.getResolvedPoms().get(pom) == repo.getResolvedPoms().get(linkedPom));
+        }
+    }
+
+    private void symlink(String target, File link) throws Exception {
+        Process ln = Runtime.getRuntime().exec(new String[] {"ln", "-s", target, link.getPath()});
+        assertEquals(0, ln.waitFor());
+    }
+
+    private File writePom(File baseDir, String artifactId, String parentArtifactId) throws IOException {
+        File pom = new File(baseDir, artifactId + ".pom");
+        FileWriter out = new FileWriter(pom);
+        out.write("<project><modelVersion>4.0.0</modelVersion>");
+        if (parentArtifactId != null) {
+            out.write("<parent><groupId>test</groupId><artifactId>" + parentArtifactId + "</artifactId>"
+                    + "<version>1.0</version></parent>");
+        }
+        out.write("<groupId>test</groupId><artifactId>" + artifactId + "</artifactId><version>1.0</version>"
+                + "<packaging>pom</packaging></project>");
+        out.close();
+        return pom;
+    }
+
     @Test
     public void testRegisterPom() throws Exception {
         Repository repo = getRepository();
@@ -73,6 +163,30 @@ public class RepositoryTest {
         assertEquals(pom, repo.searchMatchingPOM(pom.getThisPom()));
     }
 
+    @Test
+    public void testSearchWithRulesPublishedAfterRegistration() throws Exception {
+        Repository repo = getRepository();
+        repo.scan();
+
+        File pomFile = TemporaryPomFolder.getFileInClasspath("antlr3-tools.xml");
+        POMInfo pom = new POMReader().readPom(pomFile);
+        try {
+            repo.registerPom(pomFile, pom);
+        } catch (DependencyNotFoundException ignore) {}
+
+        Dependency antlrOtherVersionPom = new Dependency("org.antlr", "antlr", "jar", "3.3.1");
+        assertNull(repo.searchMatchingPOM(antlrOtherVersionPom));
+
+        // POMTransformer publishes the rules after registering the pom
+        pom.getProperties().put("debian.mavenRules", "org.antlr antlr * s/3\\..*/" + pom.getThisPom().getVersion() + "/ * *");
+        assertEquals(pom, repo.searchMatchingPOM(antlrOtherVersionPom));
+
+        Dependency clojureOtherVersionDep = new Dependency("org.clojure", "clojure", "jar", "1.0");
+        List<POMInfo> clojurePoms = repo.searchMatchingPOMsIgnoreVersion(clojureOtherVersionDep);
+        assertEquals(1, clojurePoms.size());
+        assertEquals("1.2.1", clojurePoms.get(0).getThisPom().getVersion());
+    }
+
     @Test
     public void testSearchMatchingPOM() throws Exception {
 
@@ -117,6 +231,247 @@ public class RepositoryTest {
 
     }
 
+    @Test
+    public void testIndex() throws Exception {
+        // The modification times of the copy of the repository are changed below
+        File baseDir = tmpDir.newFolder("repository");
+        FileUtils.copyDirectory(getRepository().getBaseDir(), baseDir);
+        File indexFile = new File(tmpDir.getRoot(), "maven-repo.index");
+        Repository repo = new Repository(baseDir);
+        repo.setIndexFile(indexFile);
+        repo.scanOnce();
+        assertTrue(indexFile.exists());
+
+        Repository indexedRepo = new Repository(baseDir);
+        assertTrue(indexedRepo.loadIndex(indexFile));
+        assertEquals(25, indexedRepo.getResolvedPoms().size());
+        assertEquals(0, indexedRepo.getUnresolvedPoms().size());
+        assertEquals(0, indexedRepo.getPomsWithMissingParent().size());
+
+        Dependency antParentDebianVersionDep = new Dependency("org.apache.ant", "ant-parent", "pom", "debian");
+        Dependency antParentDebianOtherVersionDep = new Dependency("org.apache.ant", "ant-parent", "pom", "1.8.3");
+        assertEquals(antParentDebianVersionDep, indexedRepo.searchMatchingPOM(antParentDebianOtherVersionDep).getThisPom());
+
+        // The poms loaded from the index are parsed when their content is needed
+        Dependency dependency = new Dependency("org.apache.ant", "ant-apache-bcel", "jar", "debian");
+        POMInfo pom = indexedRepo.getPOM(dependency);
+        assertEquals(repo.getPOM(dependency).getDependencies(), pom.getDependencies());
+        assertEquals(repo.getPOM(dependency).getParent(), pom.getParent());
+
+        // The index is ignored when the repository has been modified
+        long lastModified = baseDir.lastModified();
+        baseDir.setLastModified(lastModified - 10000);
+        assertFalse(new Repository(baseDir).loadIndex(indexFile));
+        baseDir.setLastModified(lastModified);
+        assertTrue(new Repository(baseDir).loadIndex(indexFile));
+
+        // The index is ignored when a pom has been modified
+        File pomFile = indexedRepo.getResolvedPoms().keySet().iterator().next();
+        pomFile.setLastModified(pomFile.lastModified() - 10000);
+        assertFalse(new Repository(baseDir).loadIndex(indexFile));
+        assertFalse(new Repository(baseDir).loadIndex(new File(tmpDir.getRoot(), "missing.index")));
+    }
+
+    @Test
+    public void testIndexWithMissingParent() throws Exception {
+        File indexFile = new File(tmpDir.getRoot(), "maven-repo.index");
+        File baseDir = tmpDir.newFolder("repository");
+        File f = writePom(baseDir, "f", "g");
+        writePom(baseDir, "g", null);
+        Repository repo = new Repository(baseDir);
+        repo.setIndexFile(indexFile);
+        repo.scanOnce();
+
+        // The parent of the pom changes without changing the modification times
+        long lastModified = f.lastModified();
+        long dirLastModified = baseDir.lastModified();
+        writePom(baseDir, "f", "missing");
+        f.setLastModified(lastModified);
+        baseDir.setLastModified(dirLastModified);
+
+        Repository indexedRepo = new Repository(baseDir);
+        assertTrue(indexedRepo.loadIndex(indexFile));
+        assertEquals("missing", indexedRepo.getPOM(new Dependency("test", "f", "pom", "1.0")).getParent().getArtifactId());
+        assertFalse(indexedRepo.getResolvedPoms().containsKey(f));
+        assertTrue(indexedRepo.getUnresolvedPoms().containsKey(f));
+        assertTrue(indexedRepo.getPomsWithMissingParent().containsKey(f));
+    }
+
+    @Test
+    public void testDependencyGraph() throws Exception {
+        Repository repo = getRepository();
+        repo.scan();
+        DependencyGraph graph = repo.getDependencyGraph();
+        assertSame(graph, repo.getDependencyGraph());
+
+        int bcelTask = graph.getId(new Dependency("org.apache.ant", "ant-apache-bcel", "jar", "debian"));
+        int ant = graph.getId(new Dependency("org.apache.ant", "ant", "jar", "debian"));
+        int antParent = graph.getId(new Dependency("org.apache.ant", "ant-parent", "pom", "debian"));
+        int bcel = graph.getId(new Dependency("org.apache.bcel", "bcel", "jar", "5.x"));
+        assertTrue(graph.isPackaged(bcelTask));
+        assertEquals(-1, graph.getId(new Dependency("org.apache.ant", "ant-apache-bcel", "jar", "0.1")));
+
+        List<Coordinate> dependencies = graph.getCoordinates(bitSet(graph.getDependencies(bcelTask)));
+        assertEquals(3, dependencies.size());
+        assertTrue(dependencies.contains(graph.getCoordinate(ant)));
+        assertTrue(dependencies.contains(graph.getCoordinate(antParent)));
+        assertTrue(dependencies.contains(graph.getCoordinate(bcel)));
+        assertTrue(graph.getTransitiveDependencies(bcelTask).get(antParent));
+
+        BitSet dependents = graph.getTransitiveReverseDependencies(antParent);
+        assertTrue(dependents.get(ant));
+        assertTrue(dependents.get(bcelTask));
+        assertFalse(dependents.get(antParent));
+
+        // The missing dependencies are part of the graph
+        BitSet launcher = graph.getIds("org.apache.ant", "ant-launcher");
+        assertEquals(1, launcher.cardinality());
+        assertFalse(graph.isPackaged(launcher.nextSetBit(0)));
+        assertEquals(0, graph.getDependencies(launcher.nextSetBit(0)).length);
+        dependents = graph.getTransitiveReverseDependencies(launcher);
+        assertTrue(dependents.get(ant));
+        assertTrue(dependents.get(bcelTask));
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        Repository repo = getRepository();
+        repo.setReportTopCount(1);
+        repo.scan();
+        final List<String> sections = new ArrayList<String>();
+        final List<String> items = new ArrayList<String>();
+        repo.report(new RepositoryReportWriter() {
+            public void printItem(String string) {
+                items.add(sections.get(sections.size() - 1) + ": " + string);
+            }
+            public void endItem() {
+            }
+            public void printSectionStart(String string) {
+                sections.add(string);
+            }
+            public void printSectionEnd() {
+            }
+            public void printEnd() {
+            }
+            public void printStart() {
+            }
+        });
+
+        assertTrue(sections.contains("Errors"));
+        assertTrue(items.contains("Errors: Unpackaged dependency: org.apache.ant:ant-launcher:jar:debian in "
+                + new File(repo.getBaseDir(), "org/apache/ant/ant/debian/ant-debian.pom")));
+        int topDependencies = 0;
+        for (String item : items) {
+            if (item.startsWith("Top 1 missing dependencies: ")) {
+                topDependencies++;
+            }
+        }
+        assertEquals(1, topDependencies);
+    }
+
+    @Test
+    public void testStructuredReport() throws Exception {
+        Repository repo = getRepository();
+        repo.scan();
+        String antPom = new File(repo.getBaseDir(), "org/apache/ant/ant/debian/ant-debian.pom").getAbsolutePath();
+
+        StringWriter json = new StringWriter();
+        repo.report(new RepositoryReportJSONWriter(json));
+        List<String> lines = Arrays.asList(json.toString().split("\n"));
+        assertTrue(lines.contains("{\"issue\":\"unpackaged-dependency\",\"pom\":\"" + antPom + "\","
+                + "\"dependency\":\"org.apache.ant:ant-launcher:jar:debian\","
+                + "\"message\":\"Unpackaged dependency: org.apache.ant:ant-launcher:jar:debian in " + antPom + "\"}"));
+
+        StringWriter csv = new StringWriter();
+        repo.report(new RepositoryReportCSVWriter(csv));
+        lines = Arrays.asList(csv.toString().split("\r\n"));
+        assertEquals("issue,pom,dependency,count,message", lines.get(0));
+        assertEquals("top-missing-dependency,,org.apache.maven:maven-plugin-api:jar:debian,8,"
+                + "Missing dependency org.apache.maven:maven-plugin-api:jar:debian is needed in 8 places", lines.get(lines.size() - 10));
+        assertEquals(json.toString().split("\n").length + 1, lines.size());
+    }
+
+    private static BitSet bitSet(int[] ids) {
+        BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+
+    @Test
+    public void testIncrementalScan() throws Exception {
+        File baseDir = tmpDir.newFolder("repository");
+        FileUtils.copyDirectory(getRepository().getBaseDir(), baseDir);
+        // A dependency inheriting its scope from the management of the parent
+        File parentPom = new File(baseDir, "org/foo/foo-parent/1.0/foo-parent-1.0.pom");
+        File childPom = new File(baseDir, "org/foo/foo/1.0/foo-1.0.pom");
+        FileUtils.writeStringToFile(parentPom, "<project><groupId>org.foo</groupId><artifactId>foo-parent</artifactId>"
+                + "<version>1.0</version><packaging>pom</packaging><dependencyManagement><dependencies>"
+                + "<dependency><groupId>x</groupId><artifactId>x</artifactId><version>1.0</version><scope>test</scope></dependency>"
+                + "</dependencies></dependencyManagement></project>", "UTF-8");
+        FileUtils.writeStringToFile(childPom, "<project><parent><groupId>org.foo</groupId><artifactId>foo-parent</artifactId>"
+                + "<version>1.0</version></parent><artifactId>foo</artifactId><dependencies>"
+                + "<dependency><groupId>x</groupId><artifactId>x</artifactId></dependency></dependencies></project>", "UTF-8");
+        File manifestFile = new File(tmpDir.getRoot(), "maven-repo.manifest");
+        Repository repo = new Repository(baseDir);
+        repo.setManifestFile(manifestFile);
+        repo.scan();
+        assertTrue(manifestFile.exists());
+        assertEquals(27, repo.getParsedPomCount());
+        assertEquals("test", repo.getResolvedPoms().get(childPom).getDependencies().get(DEPENDENCIES).get(0).getScope());
+
+        // The unchanged poms are read from the manifest
+        Repository incrementalRepo = new Repository(baseDir);
+        incrementalRepo.setManifestFile(manifestFile);
+        incrementalRepo.scan();
+        assertEquals(0, incrementalRepo.getParsedPomCount());
+        assertEquals(repo.getResolvedPoms().keySet(), incrementalRepo.getResolvedPoms().keySet());
+        assertEquals(repo.getPomsWithMissingVersions().keySet(), incrementalRepo.getPomsWithMissingVersions().keySet());
+        Dependency dependency = new Dependency("org.apache.ant", "ant-apache-bcel", "jar", "debian");
+        assertEquals(repo.getPOM(dependency).getDependencies(), incrementalRepo.getPOM(dependency).getDependencies());
+        assertEquals(repo.getPOM(dependency).getProperties(), incrementalRepo.getPOM(dependency).getProperties());
+        for (File pomFile : repo.getResolvedPoms().keySet()) {
+            assertSameScopes(repo.getResolvedPoms().get(pomFile), incrementalRepo.getResolvedPoms().get(pomFile));
+        }
+
+        // Only the modified poms are parsed again, the deleted poms are removed
+        File antPom = new File(baseDir, "org/apache/ant/ant/debian/ant-debian.pom");
+        File touchedPom = new File(baseDir, "org/apache/bcel/bcel/5.x/bcel-5.x.pom");
+        File deletedPom = new File(baseDir, "org/apache/ant/ant/1.7.1/ant-1.7.1.pom");
+        String content = FileUtils.readFileToString(antPom, "UTF-8");
+        FileUtils.writeStringToFile(antPom, content.replace("<artifactId>ant-launcher</artifactId>", "<artifactId>ant-launcher2</artifactId>"), "UTF-8");
+        antPom.setLastModified(antPom.lastModified() - 10000);
+        touchedPom.setLastModified(touchedPom.lastModified() - 10000);
+        assertTrue(deletedPom.delete());
+
+        incrementalRepo = new Repository(baseDir);
+        incrementalRepo.setManifestFile(manifestFile);
+        incrementalRepo.scan();
+        assertEquals(1, incrementalRepo.getParsedPomCount());
+        assertEquals(26, incrementalRepo.getResolvedPoms().size());
+        assertFalse(incrementalRepo.getResolvedPoms().containsKey(deletedPom));
+        assertEquals("ant-launcher2", incrementalRepo.getResolvedPoms().get(antPom).getDependencies().get(DEPENDENCIES).get(0).getArtifactId());
+
+        incrementalRepo = new Repository(baseDir);
+        incrementalRepo.setManifestFile(manifestFile);
+        incrementalRepo.scan();
+        assertEquals(0, incrementalRepo.getParsedPomCount());
+        assertEquals(26, incrementalRepo.getResolvedPoms().size());
+    }
+
+    private static void assertSameScopes(POMInfo expected, POMInfo actual) {
+        for (POMInfo.DependencyType type : POMInfo.DependencyType.values()) {
+            List<Dependency> expectedDependencies = expected.getDependencies().get(type);
+            List<Dependency> actualDependencies = actual.getDependencies().get(type);
+            assertEquals(expectedDependencies.size(), actualDependencies.size());
+            for (int i = 0; i < expectedDependencies.size(); i++) {
+                assertEquals(expectedDependencies.get(i).getScope(), actualDependencies.get(i).getScope());
+                assertEquals(expectedDependencies.get(i).isScopeDefined(), actualDependencies.get(i).isScopeDefined());
+            }
+        }
+    }
+
     private POMInfo getAntlrPom(Repository repo, File pomFile) throws XMLStreamException, IOException {
         POMCleaner pomCleaner = new POMCleaner();
         pomCleaner.getRulesFiles().addDefaultRules();
@@ -16,6 +16,9 @@
 
 package org.debian.maven.repo;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -133,4 +136,49 @@ public class RuleTest {
         assertTrue(new Rule("s/foo/bar/").isSubstitution());
         assertTrue(new Rule("s/.*/debian/").isSubstitution());
     }
+
+    /**
+     * The rules evaluated without regular expression behave like the regular expression.
+     */
+    @Test
+    public void testFastPaths() {
+        String[] rules = {"test", "test.stuff", "s/test/foo/", "s/org.apache/org.debian/", "s/test/$0-foo/", "*",
+                "s/.*/debian/", "s/(.*)/$1/", "s/.*//", "test$", "s/\\.*/x/", "s/(.*)/\\$1/"};
+        String[] values = {"test", "test.stuff", "teststuff", "org.apache", "xxx", "", "a\nb", "test$", "foo"};
+        for (String def : rules) {
+            Rule rule = new Rule(def);
+            Pattern pattern = Pattern.compile(rule.getPattern());
+            for (String value : values) {
+                assertEquals(def + " on " + value, pattern.matcher(value).matches(), rule.match(value));
+                assertEquals(def + " on " + value, applyRegex(def, value), rule.apply(value));
+            }
+        }
+
+        assertEquals("debian", new Rule("s/.*/debian/").apply(null));
+        assertTrue(new Rule("s/.*/debian/").matchesNull());
+        assertFalse(new Rule("test").matchesNull());
+        assertFalse(new Rule("test$").match("test"));
+        assertEquals("test$", new Rule("test$").getLiteral());
+    }
+
+    private static String applyRegex(String def, String value) {
+        Matcher substitution = Pattern.compile("s/([^/]*)/([^/]*)/?").matcher(def);
+        Pattern pattern;
+        String replace;
+        if (substitution.matches()) {
+            pattern = Pattern.compile(substitution.group(1));
+            replace = substitution.group(2);
+        } else {
+            pattern = Pattern.compile(def.replace(".", "\\.").replace("*", "(.*)").replace("$", "\\$"));
+            replace = def.replace("$", "\\$").replace("*", "$1");
+        }
+        Matcher m = pattern.matcher(value);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            if (m.start() < m.end()) {
+                m.appendReplacement(sb, replace);
+            }
+        }
+        return sb.toString();
+    }
 }